@@ -0,0 +1,211 @@
+package net.stoerbild.demo1.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Runs the cool array benchmarks for several grid sizes. Every benchmark is warmed up first, then
+ * measured in several timed iterations. Besides the time per operation the allocated bytes per
+ * operation, the allocation rate and the garbage collections during the measurement are reported.
+ * <p>
+ * With <code>-z true</code> the runner exits with an error if any benchmark allocates memory, which
+ * guards the allocation free update path.
+ * <p>
+ * Usage: <code>BenchmarkRunner [-s 20,100,...] [-b update,wave,...] [-w warmupSeconds]
+ * [-i iterations] [-t iterationSeconds] [-z true]</code>
+ * 
+ * @author mq
+ */
+public class BenchmarkRunner {
+
+	// grid sizes (x and z) from the current demo size up to 1000x1000
+	private static final String DEFAULT_SIZES = "20,100,200,500,1000";
+
+	// operations run between two clock checks
+	private static final int BATCH_SIZE = 16;
+
+	private int[] sizes;
+	private String filter = null;
+	private float warmupSeconds = 1.0f;
+	private int iterations = 5;
+	private float iterationSeconds = 1.0f;
+	private boolean requireNoAllocation = false;
+
+	// benchmarks that allocated memory
+	private int allocatingBenchmarks = 0;
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Entry Point
+	 * 
+	 * @param args
+	 */
+	public static void main(final String[] args) {
+		final BenchmarkRunner runner = new BenchmarkRunner();
+		runner.sizes = parseSizes(DEFAULT_SIZES);
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if ("-s".equals(args[i])) {
+				runner.sizes = parseSizes(args[i + 1]);
+			} else if ("-b".equals(args[i])) {
+				runner.filter = "," + args[i + 1] + ",";
+			} else if ("-w".equals(args[i])) {
+				runner.warmupSeconds = Float.parseFloat(args[i + 1]);
+			} else if ("-i".equals(args[i])) {
+				runner.iterations = Integer.parseInt(args[i + 1]);
+			} else if ("-t".equals(args[i])) {
+				runner.iterationSeconds = Float.parseFloat(args[i + 1]);
+			} else if ("-z".equals(args[i])) {
+				runner.requireNoAllocation = Boolean.parseBoolean(args[i + 1]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		runner.runAll(CoolGridBenchmarks.all());
+		if (runner.requireNoAllocation && (runner.allocatingBenchmarks > 0)) {
+			System.err.println(runner.allocatingBenchmarks + " benchmark(s) allocated memory");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Run all (selected) benchmarks for all grid sizes
+	 * 
+	 * @param benchmarks
+	 */
+	private void runAll(final List<GridBenchmark> benchmarks) {
+		System.out.println(String.format("%-10s %10s %14s %14s %14s %12s %8s %10s", "Benchmark", "Size",
+				"ns/op", "error", "B/op", "MB/s alloc", "GCs", "GC ms"));
+		for (final GridBenchmark benchmark : benchmarks) {
+			if ((filter != null) && !filter.contains("," + benchmark.getName() + ",")) {
+				continue;
+			}
+			for (final int size : sizes) {
+				run(benchmark, size);
+			}
+		}
+	}
+
+	/**
+	 * Warm up and measure one benchmark for one grid size
+	 * 
+	 * @param benchmark
+	 * @param size
+	 *            of the grid in x and z direction
+	 */
+	private void run(final GridBenchmark benchmark, final int size) {
+		benchmark.setUp(size, size);
+		measure(benchmark, warmupSeconds);
+
+		final double[] nsPerOp = new double[iterations];
+		long totalOps = 0;
+		long totalNanos = 0;
+		final long gcCountStart = gcCount();
+		final long gcTimeStart = gcTime();
+		final long allocatedStart = allocatedBytes();
+		for (int i = 0; i < iterations; i++) {
+			final long start = System.nanoTime();
+			final long ops = measure(benchmark, iterationSeconds);
+			final long nanos = System.nanoTime() - start;
+			nsPerOp[i] = (double) nanos / ops;
+			totalOps += ops;
+			totalNanos += nanos;
+		}
+		final long allocated = allocatedBytes() - allocatedStart;
+		if (allocated > 0) {
+			allocatingBenchmarks++;
+		}
+
+		// mean and 99.9% confidence interval (normal approximation) over all iterations
+		double mean = 0;
+		for (final double value : nsPerOp) {
+			mean += value;
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (final double value : nsPerOp) {
+			variance += (value - mean) * (value - mean);
+		}
+		final double error = iterations > 1 ? 3.29 * Math.sqrt(variance / (iterations - 1)) / Math.sqrt(iterations)
+				: Double.NaN;
+
+		final String bytesPerOp = allocated < 0 ? "n/a" : String.format("%.1f", (double) allocated / totalOps);
+		final String allocRate = allocated < 0 ? "n/a" : String.format("%.1f", allocated / (1024.0 * 1024.0)
+				/ (totalNanos / 1.0e9));
+		System.out.println(String.format("%-10s %10s %14.1f %14.1f %14s %12s %8d %10d", benchmark.getName(),
+				size + "x" + size, mean, error, bytesPerOp, allocRate, gcCount() - gcCountStart, gcTime()
+						- gcTimeStart));
+	}
+
+	/**
+	 * Run the benchmark operation for the given time
+	 * 
+	 * @param benchmark
+	 * @param seconds
+	 * @return number of operations
+	 */
+	private long measure(final GridBenchmark benchmark, final float seconds) {
+		final long end = System.nanoTime() + (long) (seconds * 1.0e9);
+		long ops = 0;
+		do {
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				benchmark.run();
+			}
+			ops += BATCH_SIZE;
+		} while (System.nanoTime() < end);
+		return ops;
+	}
+
+	/**
+	 * @return bytes allocated by the current thread or -1 if not supported by the vm
+	 */
+	private long allocatedBytes() {
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+		if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return number of garbage collections since vm start
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, bean.getCollectionCount());
+		}
+		return count;
+	}
+
+	/**
+	 * @return time spent in garbage collection since vm start in ms
+	 */
+	private static long gcTime() {
+		long time = 0;
+		for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, bean.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * @param sizes
+	 *            comma separated list of grid sizes
+	 * @return grid sizes
+	 */
+	private static int[] parseSizes(final String sizes) {
+		final String[] values = sizes.split(",");
+		final int[] result = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = Integer.parseInt(values[i].trim());
+		}
+		return result;
+	}
+
+}
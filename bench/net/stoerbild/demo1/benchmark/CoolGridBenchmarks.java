@@ -0,0 +1,234 @@
+package net.stoerbild.demo1.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.stoerbild.demo1.coolarray.BoxBatchMesh;
+import net.stoerbild.demo1.helper.DaemonThreadFactory;
+
+/**
+ * All benchmarks for the cool array simulation
+ * 
+ * @author mq
+ */
+public class CoolGridBenchmarks {
+
+	// 60 fps
+	private static final float FRAME_TIME = 1.0f / 60.0f;
+
+	// long enough for every action to do one step each frame
+	private static final float ACTION_FRAME_TIME = 0.11f;
+
+	// frames after which the update benchmark pushes all boxes again, so they never come to rest
+	private static final int UPDATE_REPUSH_FRAMES = 256;
+
+	// one band per core for the parallel update
+	private static final int CORES = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService physicsExecutor;
+
+	/**
+	 * @return all benchmarks
+	 */
+	public static List<GridBenchmark> all() {
+		final List<GridBenchmark> benchmarks = new ArrayList<GridBenchmark>();
+		benchmarks.add(update());
+		benchmarks.add(updateParallel());
+		benchmarks.add(updateBatched());
+		benchmarks.add(pushAll());
+		benchmarks.add(pushRand());
+		benchmarks.add(snake());
+		benchmarks.add(wave());
+		benchmarks.add(rings());
+		return benchmarks;
+	}
+
+	/**
+	 * One frame of the whole grid while all boxes are in motion
+	 * 
+	 * @return benchmark
+	 */
+	private static GridBenchmark update() {
+		return new GridBenchmark("update", FRAME_TIME) {
+
+			private int frame;
+
+			@Override
+			protected void prepare() {
+				frame = 0;
+				grid.pushAll();
+			}
+
+			@Override
+			public void run() {
+				if (++frame == UPDATE_REPUSH_FRAMES) {
+					frame = 0;
+					grid.pushAll();
+				}
+				clock.tick();
+				grid.update();
+			}
+		};
+	}
+
+	/**
+	 * Same as update but with a parallel physics step for any number of moving boxes
+	 * 
+	 * @return benchmark
+	 */
+	private static GridBenchmark updateParallel() {
+		return new GridBenchmark("updatePar", FRAME_TIME) {
+
+			private int frame;
+
+			@Override
+			protected void prepare() {
+				if (physicsExecutor == null) {
+					physicsExecutor = Executors.newFixedThreadPool(Math.max(1, CORES - 1),
+							new DaemonThreadFactory("physics"));
+				}
+				grid.getPhysics().setExecutor(physicsExecutor, CORES);
+				grid.getPhysics().setParallelThreshold(0);
+				frame = 0;
+				grid.pushAll();
+			}
+
+			@Override
+			public void run() {
+				if (++frame == UPDATE_REPUSH_FRAMES) {
+					frame = 0;
+					grid.pushAll();
+				}
+				clock.tick();
+				grid.update();
+			}
+		};
+	}
+
+	/**
+	 * Same as update but the boxes are also written into a batched mesh (one draw call for the whole
+	 * grid)
+	 * 
+	 * @return benchmark
+	 */
+	private static GridBenchmark updateBatched() {
+		return new GridBenchmark("batched", FRAME_TIME) {
+
+			private int frame;
+			private BoxBatchMesh mesh;
+
+			@Override
+			protected void prepare() {
+				mesh = new BoxBatchMesh("batch", grid.getXSize(), grid.getZSize());
+				frame = 0;
+				grid.pushAll();
+			}
+
+			@Override
+			public void run() {
+				if (++frame == UPDATE_REPUSH_FRAMES) {
+					frame = 0;
+					grid.pushAll();
+				}
+				clock.tick();
+				grid.update();
+				mesh.update(grid.getPhysics(), 0.5f);
+			}
+		};
+	}
+
+	/**
+	 * Push all boxes
+	 * 
+	 * @return benchmark
+	 */
+	private static GridBenchmark pushAll() {
+		return new GridBenchmark("pushAll", FRAME_TIME) {
+
+			@Override
+			public void run() {
+				grid.pushAll();
+			}
+		};
+	}
+
+	/**
+	 * Push a random box
+	 * 
+	 * @return benchmark
+	 */
+	private static GridBenchmark pushRand() {
+		return new GridBenchmark("pushRand", FRAME_TIME) {
+
+			@Override
+			public void run() {
+				grid.pushRand();
+			}
+		};
+	}
+
+	/**
+	 * One step of the snake
+	 * 
+	 * @return benchmark
+	 */
+	private static GridBenchmark snake() {
+		return new GridBenchmark("snake", ACTION_FRAME_TIME) {
+
+			@Override
+			protected void prepare() {
+				grid.switchSnake();
+			}
+
+			@Override
+			public void run() {
+				clock.tick();
+				grid.updateActions();
+			}
+		};
+	}
+
+	/**
+	 * One step of the wave
+	 * 
+	 * @return benchmark
+	 */
+	private static GridBenchmark wave() {
+		return new GridBenchmark("wave", ACTION_FRAME_TIME) {
+
+			@Override
+			protected void prepare() {
+				grid.switchWave();
+			}
+
+			@Override
+			public void run() {
+				clock.tick();
+				grid.updateActions();
+			}
+		};
+	}
+
+	/**
+	 * One step of the rings
+	 * 
+	 * @return benchmark
+	 */
+	private static GridBenchmark rings() {
+		return new GridBenchmark("rings", ACTION_FRAME_TIME) {
+
+			@Override
+			protected void prepare() {
+				grid.switchRings();
+			}
+
+			@Override
+			public void run() {
+				clock.tick();
+				grid.updateActions();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,65 @@
+package net.stoerbild.demo1.benchmark;
+
+import net.stoerbild.demo1.coolarray.CoolGrid;
+import net.stoerbild.demo1.helper.FixedClock;
+
+/**
+ * A single benchmarked operation on a headless {@link CoolGrid}. A fresh grid is created for every
+ * grid size, {@link #run()} is the measured operation.
+ * 
+ * @author mq
+ */
+public abstract class GridBenchmark {
+
+	private final String name;
+
+	// fixed time per simulated frame
+	private final float timePerFrame;
+
+	protected FixedClock clock;
+	protected CoolGrid grid;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name
+	 *            of the benchmark
+	 * @param timePerFrame
+	 *            simulated time per frame in seconds
+	 */
+	protected GridBenchmark(final String name, final float timePerFrame) {
+		this.name = name;
+		this.timePerFrame = timePerFrame;
+	}
+
+	/**
+	 * Create a new grid and prepare it for the benchmark
+	 * 
+	 * @param xSize
+	 * @param zSize
+	 */
+	public void setUp(final int xSize, final int zSize) {
+		clock = new FixedClock(timePerFrame);
+		grid = new CoolGrid(xSize, zSize, clock);
+		prepare();
+	}
+
+	/**
+	 * Prepare the grid after it has been created (start actions ...)
+	 */
+	protected void prepare() {
+	}
+
+	/**
+	 * The measured operation
+	 */
+	public abstract void run();
+
+	/**
+	 * @return name of the benchmark
+	 */
+	public String getName() {
+		return name;
+	}
+
+}
@@ -1,16 +1,39 @@
 package net.stoerbild.demo1;
 
+import net.stoerbild.demo1.helper.AudioThread;
+import net.stoerbild.demo1.helper.CachedShadowPass;
+import net.stoerbild.demo1.helper.CommandServer;
+import net.stoerbild.demo1.helper.DemoMetrics;
 import net.stoerbild.demo1.helper.FPSCounter;
+import net.stoerbild.demo1.helper.FrameTimings;
+import net.stoerbild.demo1.helper.OccluderSource;
+import net.stoerbild.demo1.helper.QualityController;
+import net.stoerbild.demo1.helper.QualityListener;
 import net.stoerbild.demo1.helper.ResourceManager;
+import net.stoerbild.demo1.helper.TimedPass;
+import net.stoerbild.demo1.helper.TimingOverlay;
 import net.stoerbild.demo1.resources.Resources;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
 import com.jme.app.SimplePassGame;
+import com.jme.input.KeyBindingManager;
+import com.jme.input.KeyInput;
+import com.jme.light.Light;
 import com.jme.math.Vector3f;
 import com.jme.renderer.ColorRGBA;
+import com.jme.renderer.Renderer;
 import com.jme.renderer.pass.DirectionalShadowMapPass;
+import com.jme.renderer.pass.Pass;
 import com.jme.renderer.pass.RenderPass;
 import com.jme.renderer.pass.ShadowedRenderPass;
+import com.jme.scene.Spatial;
 import com.jme.scene.state.CullState;
+import com.jme.scene.state.LightState;
+import com.jme.scene.state.RenderState;
 import com.jme.scene.state.ZBufferState;
 import com.jmex.audio.AudioSystem;
 import com.jmex.audio.AudioTrack;
@@ -23,19 +46,80 @@ import com.jmex.effects.glsl.BloomRenderPass;
  * 
  * @author mq
  */
-public class Application extends SimplePassGame {
+public class Application extends SimplePassGame implements QualityListener {
 
 	// FPS update rate in seconds
 	private static final int FPS_UPDATE_RATE = 1;
 
+	// adapt the quality to hold the frame budget
+	private static final boolean ADAPTIVE_QUALITY = true;
+	private static final float FRAME_BUDGET = 1.0f / 60.0f;
+
+	// quality levels, each level adds to the one below. FSAA samples are not part of the levels, they
+	// can only be set before the display is created
+	private static final int QUALITY_NO_SHADOWS = 0;
+	private static final int QUALITY_SHADOW_MAP = 1;
+	private static final int QUALITY_ONE_SHADOW_CASTER = 2;
+	private static final int QUALITY_ALL_SHADOW_CASTERS = 3;
+	private static final int QUALITY_BLOOM = 4;
+
+	// resources are decoded by background threads and cached
+	private static final int RESOURCE_THREADS = 2;
+	private static final long RESOURCE_CACHE_BYTES = 64L * 1024 * 1024;
+
+	// streamed music is refilled by the audio thread, a stream buffer plays much longer than this
+	private static final float AUDIO_UPDATE_INTERVAL = 0.05f;
+
+	// remote control of the array via UDP and TCP, on the loopback interface unless the system property
+	// CommandServer.BIND_ADDRESS_PROPERTY names another address
+	private static final boolean REMOTE_CONTROL = true;
+	private static final int REMOTE_PORT = 7770;
+
 	// FPS Statistics
 	private final FPSCounter fpsCounter;
 
+	// frame time percentiles of each part of a frame
+	private final FrameTimings frameTimings;
+
+	// metrics published via JMX
+	private final DemoMetrics metrics;
+
+	// loads and caches the resources of the levels
+	private final ResourceManager resourceManager;
+
+	// start of the current frame and of the render passes (System.nanoTime)
+	private long frameStart = 0;
+	private long renderStart = 0;
+
+	// updates the audio system (streams, music queue)
+	private AudioThread audioThread;
+
+	// receives the commands of the remote control, null if disabled
+	private CommandServer commandServer;
+
+	// on-screen table of the frame timings, hidden by default
+	private TimingOverlay timingOverlay;
+
+	// passes switched by the quality level
+	private TimedPass shadowPass;
+	// stencil shadows of the shadow pass, its occluders are reported by the level
+	private CachedShadowPass volumeShadowPass;
+	private TimedPass shadowMapPass;
+	private TimedPass bloomPass;
+	// lights casting shadows at full quality
+	private final List<Light> shadowCasters = new ArrayList<Light>();
+
+	// render quality, null if the quality is fixed
+	private QualityController qualityController;
+
 	// The name of the application
 	private final String appName;
 
-	// Current game level
-	private ILevel level;
+	// runs the current level and preloads the next one
+	private final LevelManager levelManager;
+
+	// fps shown in the window title
+	private int titleFps = -1;
 
 	/**
 	 * Constructor
@@ -49,6 +133,10 @@ public class Application extends SimplePassGame {
 		stencilBits = 8; // shadow calculation
 		this.appName = appName;
 		fpsCounter = new FPSCounter(FPS_UPDATE_RATE);
+		frameTimings = new FrameTimings();
+		metrics = new DemoMetrics(frameTimings);
+		resourceManager = new ResourceManager(RESOURCE_THREADS, RESOURCE_CACHE_BYTES);
+		levelManager = new LevelManager();
 	}
 
 	/*
@@ -79,8 +167,8 @@ public class Application extends SimplePassGame {
 
 		// Set application window title and load demo level
 		updateWindowTitle();
-		level = new DemoLevel(display.getRenderer(), rootNode);
-		level.init();
+		startCommandServer();
+		levelManager.start(createLevel());
 
 		// demo level is already locked internally, but locking root node will increase performance
 		// for an additional 5-10%
@@ -89,15 +177,35 @@ public class Application extends SimplePassGame {
 		// create all render passes.
 		createPassManager();
 
-		// initialize sound & music
+		// render quality (starts with the quality the demo was designed for)
+		collectShadowCasters();
+		final int qualityLevels = bloomPass != null ? QUALITY_BLOOM + 1 : QUALITY_BLOOM;
+		qualityController = new QualityController(qualityLevels, QUALITY_ALL_SHADOW_CASTERS, FRAME_BUDGET, this);
+		qualityController.setEnabled(ADAPTIVE_QUALITY);
+
+		// publish metrics via JMX
+		metrics.register();
+
+		// timing overlay (toggled with F5)
+		timingOverlay = new TimingOverlay(frameTimings, FPS_UPDATE_RATE, display.getHeight() - 20);
+		timingOverlay.setCullHint(Spatial.CullHint.Always);
+		statNode.attachChild(timingOverlay);
+		KeyBindingManager.getKeyBindingManager().set("timings", KeyInput.KEY_F5);
+		// load the next show in the background and switch to it (F6)
+		KeyBindingManager.getKeyBindingManager().set("nextlevel", KeyInput.KEY_F6);
+
+		// initialize sound & music. The music is streamed: only a few chunks of the file are in memory
+		// at any time, no matter how long the track is
 		final AudioTrack track = AudioSystem.getSystem().createAudioTrack(
-				ResourceManager.getResource(Resources.MUSIC_CASIO_PAYA_MP3), false);
-		System.out.println(Resources.MUSIC_CASIO_PAYA_MP3);
+				ResourceManager.getResource(Resources.MUSIC_CASIO_PAYA_WAV), true);
+		System.out.println(Resources.MUSIC_CASIO_PAYA_WAV);
 		final MusicTrackQueue queue = AudioSystem.getSystem().getMusicQueue();
 		queue.setCrossfadeinTime(0);
 		queue.setRepeatType(RepeatType.ONE);
 		queue.addTrack(track);
 		//queue.play();
+		audioThread = new AudioThread(AudioSystem.getSystem(), AUDIO_UPDATE_INTERVAL);
+		audioThread.start();
 
 		//MouseInput.get().setCursorVisible(true);
 
@@ -110,12 +218,133 @@ public class Application extends SimplePassGame {
 	 */
 	@Override
 	protected void simpleUpdate() {
-		assert level != null : "level is not correctly initialized";
+		assert levelManager.getLevel() != null : "level is not correctly initialized";
+
+		final long now = System.nanoTime();
+		if (frameStart != 0) {
+			frameTimings.record(FrameTimings.Section.FRAME, now - frameStart);
+			qualityController.frame(now - frameStart);
+		}
+		frameStart = now;
 
 		updateWindowTitle();
-		level.update();
+		if (KeyBindingManager.getKeyBindingManager().isValidCommand("nextlevel", false)) {
+			levelManager.prepare(createLevel(), true);
+		}
+		if (levelManager.update()) {
+			// the new level brought its own lights and occluders
+			collectShadowCasters();
+			updateOccluderSource();
+			setQuality(qualityController.getLevel());
+		}
+		frameTimings.record(FrameTimings.Section.UPDATE, System.nanoTime() - now);
+
+		if (KeyBindingManager.getKeyBindingManager().isValidCommand("timings", false)) {
+			timingOverlay.setCullHint(timingOverlay.getCullHint() == Spatial.CullHint.Always ? Spatial.CullHint.Never
+					: Spatial.CullHint.Always);
+		}
+		if (timingOverlay.getCullHint() != Spatial.CullHint.Always) {
+			timingOverlay.update(tpf);
+		}
+
+		// the audio system is updated by the audio thread
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.app.SimplePassGame#doDebug(com.jme.renderer.Renderer)
+	 */
+	@Override
+	protected void doDebug(final Renderer r) {
+		super.doDebug(r);
+		// last step of a rendered frame, all passes are done
+		frameTimings.record(FrameTimings.Section.RENDER, System.nanoTime() - renderStart);
+	}
 
-		//AudioSystem.getSystem().update();
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.app.BaseSimpleGame#cleanup()
+	 */
+	@Override
+	protected void cleanup() {
+		if (audioThread != null) {
+			audioThread.stop();
+		}
+		super.cleanup();
+		metrics.unregister();
+		if (commandServer != null) {
+			commandServer.stop();
+		}
+		levelManager.shutdown();
+		resourceManager.shutdown();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.QualityListener#setQuality(int)
+	 */
+	public void setQuality(final int level) {
+		shadowPass.setEnabled(level >= QUALITY_ONE_SHADOW_CASTER);
+		shadowMapPass.setEnabled(level == QUALITY_SHADOW_MAP);
+		if (bloomPass != null) {
+			bloomPass.setEnabled(level >= QUALITY_BLOOM);
+		}
+		// the first light always casts shadows, the others only at full quality
+		for (int i = 0; i < shadowCasters.size(); i++) {
+			shadowCasters.get(i).setShadowCaster((i == 0) || (level >= QUALITY_ALL_SHADOW_CASTERS));
+		}
+		metrics.setQualityLevel(level);
+	}
+
+	/**
+	 * @return a new demo level, not loaded yet
+	 */
+	private ILevel createLevel() {
+		return new DemoLevel(display.getRenderer(), rootNode, metrics, resourceManager, commandServer);
+	}
+
+	/**
+	 * Open the port of the remote control, the demo runs without it if the port is not available
+	 */
+	private void startCommandServer() {
+		if (!REMOTE_CONTROL) {
+			return;
+		}
+		try {
+			commandServer = new CommandServer(new InetSocketAddress(CommandServer.getBindAddress(),
+					REMOTE_PORT));
+			commandServer.start();
+		} catch (final IOException e) {
+			System.err.println("Remote control disabled: " + e.getMessage());
+			commandServer = null;
+		}
+	}
+
+	/**
+	 * The current level reports the changes of the occluders of the shadow pass, if it can
+	 */
+	private void updateOccluderSource() {
+		final ILevel level = levelManager.getLevel();
+		volumeShadowPass.setOccluderSource(level instanceof OccluderSource ? (OccluderSource) level : null);
+	}
+
+	/**
+	 * Remember all lights of the level casting shadows, these are switched by the quality level
+	 */
+	private void collectShadowCasters() {
+		shadowCasters.clear();
+		final LightState lightState = (LightState) rootNode.getRenderState(RenderState.StateType.Light);
+		if (lightState == null) {
+			return;
+		}
+		for (int i = 0; i < lightState.getQuantity(); i++) {
+			if (lightState.get(i).isShadowCaster()) {
+				shadowCasters.add(lightState.get(i));
+			}
+		}
 	}
 
 	/**
@@ -123,8 +352,15 @@ public class Application extends SimplePassGame {
 	 */
 	private void updateWindowTitle() {
 		assert fpsCounter != null : "fpsCounter is not correctly initialized";
-		// Confirmed: Setting window title every frame does not have an impact on performance
-		display.setTitle(appName + " (" + fpsCounter.getAveragedFps(timer) + ")");
+		// only build a new title if the fps changed, this avoids creating garbage every frame
+		final int fps = fpsCounter.getAveragedFps(timer);
+		if (fps == titleFps) {
+			return;
+		}
+		titleFps = fps;
+		// the average hides stutter, so the 99th percentile of the frame time is shown as well
+		display.setTitle(String.format("%s (%d, p99 %.1f ms)", appName, fps,
+				frameTimings.getHistogram(FrameTimings.Section.FRAME).getPercentile(99)));
 	}
 
 	private void createPassManager() {
@@ -132,14 +368,17 @@ public class Application extends SimplePassGame {
 		final RenderPass renderPass = new RenderPass();
 		renderPass.add(rootNode);
 
-		// volume shadow
-		final ShadowedRenderPass shadowPass = new ShadowedRenderPass();
-		shadowPass.add(rootNode);
-		shadowPass.setRenderShadows(true);
-		shadowPass.setLightingMethod(ShadowedRenderPass.LightingMethod.Additive);
-		shadowPass.addOccluder(rootNode);
-		shadowPass.setRenderVolume(false);
-		//shadowPass.setShadowColor(ColorRGBA.black);
+		// volume shadow, occluders are only collected when the level reports a change
+		final CachedShadowPass shadowedRenderPass = new CachedShadowPass();
+		shadowedRenderPass.add(rootNode);
+		shadowedRenderPass.setRenderShadows(true);
+		shadowedRenderPass.setLightingMethod(ShadowedRenderPass.LightingMethod.Additive);
+		// only meshes casting shadows are occluders, the cool array switches this box by box
+		shadowedRenderPass.addOccluder(rootNode);
+		shadowedRenderPass.setRenderVolume(false);
+		volumeShadowPass = shadowedRenderPass;
+		updateOccluderSource();
+		//shadowedRenderPass.setShadowColor(ColorRGBA.black);
 
 		// directional shadow map
 		final DirectionalShadowMapPass directionalShadowMapPass = new DirectionalShadowMapPass(
@@ -150,17 +389,34 @@ public class Application extends SimplePassGame {
 		directionalShadowMapPass.addOccluder(rootNode);
 
 		// bloom effect
-		final BloomRenderPass bloomPass = new BloomRenderPass(cam, 4);
-		bloomPass.add(rootNode);
-		bloomPass.setEnabled(true);
-		bloomPass.setUseCurrentScene(true);
-		bloomPass.setBlurIntensityMultiplier(1.7f);
-		bloomPass.setBlurSize(0.001f);
-
-		pManager.add(renderPass);
-		//pManager.add(directionalShadowMapPass);
+		final BloomRenderPass bloomRenderPass = new BloomRenderPass(cam, 4);
+		bloomRenderPass.add(rootNode);
+		bloomRenderPass.setEnabled(true);
+		bloomRenderPass.setUseCurrentScene(true);
+		bloomRenderPass.setBlurIntensityMultiplier(1.7f);
+		bloomRenderPass.setBlurSize(0.001f);
+
+		// first pass only marks the start of rendering for the frame timings
+		pManager.add(new Pass() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doRender(final Renderer r) {
+				renderStart = System.nanoTime();
+			}
+		});
+		// every pass is timed (cpu and gpu time per pass in the frame timings). Shadow, shadow map and
+		// bloom are enabled by the quality level (see setQuality)
+		shadowPass = new TimedPass("shadow", shadowedRenderPass, frameTimings);
+		shadowMapPass = new TimedPass("shadowmap", directionalShadowMapPass, frameTimings);
+		pManager.add(new TimedPass("render", renderPass, frameTimings));
+		pManager.add(shadowMapPass);
 		pManager.add(shadowPass);
-		// pManager.add(bloomPass);
+		if (bloomRenderPass.isSupported()) {
+			bloomPass = new TimedPass("bloom", bloomRenderPass, frameTimings);
+			pManager.add(bloomPass);
+		}
 	}
 
 }
@@ -4,12 +4,23 @@
 package net.stoerbild.demo1;
 
 import net.stoerbild.demo1.coolarray.CoolArray;
+import net.stoerbild.demo1.coolarray.CoolGrid;
+import net.stoerbild.demo1.coolarray.GridAction;
+import net.stoerbild.demo1.coolarray.GridCommand;
+import net.stoerbild.demo1.coolarray.GridListener;
+import net.stoerbild.demo1.helper.CommandServer;
+import net.stoerbild.demo1.helper.DemoMetrics;
+import net.stoerbild.demo1.helper.FixedClock;
+import net.stoerbild.demo1.helper.FixedTimestep;
+import net.stoerbild.demo1.helper.FrameTimings;
+import net.stoerbild.demo1.helper.InputDispatcher;
+import net.stoerbild.demo1.helper.KeyHandler;
+import net.stoerbild.demo1.helper.OccluderSource;
 import net.stoerbild.demo1.helper.ResourceManager;
 import net.stoerbild.demo1.resources.Resources;
 
 import com.jme.bounding.BoundingBox;
 import com.jme.image.Texture;
-import com.jme.input.KeyBindingManager;
 import com.jme.input.KeyInput;
 import com.jme.light.PointLight;
 import com.jme.math.Vector3f;
@@ -18,53 +29,180 @@ import com.jme.renderer.Renderer;
 import com.jme.scene.Node;
 import com.jme.scene.shape.Box;
 import com.jme.scene.state.LightState;
+import com.jme.scene.state.RenderState;
 import com.jme.scene.state.TextureState;
 import com.jme.system.DisplaySystem;
-import com.jme.util.TextureManager;
+import com.jme.util.Timer;
 
 /**
  * Stoerbild Demo Level. Creates an array of boxes with physical attributes.
  * 
  * @author mq
  */
-public class DemoLevel implements ILevel {
+public class DemoLevel implements ILevel, OccluderSource {
+
+	// physics steps per second
+	private static final float PHYSICS_RATE = 120.0f;
+	// longer frames (e.g. while loading) are not simulated completely
+	private static final float MAX_FRAME_TIME = 0.25f;
+	// physics in its own thread, if there is a core for it
+	private static final boolean THREADED_PHYSICS = Runtime.getRuntime().availableProcessors() > 1;
+	// resting boxes closer to a shadow casting light than this still cast shadows
+	private static final float SHADOW_LIGHT_DISTANCE = 40.0f;
+	// box nodes near the camera, far tiles as heightfield without shadows
+	private static final CoolArray.RenderMode RENDER_MODE = CoolArray.RenderMode.LOD;
+	// floor plane under the array, its texture is only loaded if the plane is shown
+	private static final boolean FLOOR_PLANE = false;
 
 	private final Node rootNode;
 	private final Renderer renderer;
 	private CoolArray coolArray;
 
-	public DemoLevel(final Renderer renderer, final Node rootNode) {
+	// fixed physics timestep, the array runs on simulated time
+	private final FixedTimestep timestep;
+	private final FixedClock simulationClock;
+
+	// receives the time of the physics steps and the state of the array
+	private final DemoMetrics metrics;
+	private final FrameTimings frameTimings;
+
+	// decodes the resources of the level in the background
+	private final ResourceManager resourceManager;
+
+	// key events of the level, dispatched once per frame
+	private final InputDispatcher input = new InputDispatcher();
+
+	// commands of the remote control, null if there is no remote control
+	private final CommandServer commandServer;
+
+	public DemoLevel(final Renderer renderer, final Node rootNode, final DemoMetrics metrics,
+			final ResourceManager resourceManager, final CommandServer commandServer) {
 		this.rootNode = rootNode;
 		this.renderer = renderer;
+		this.metrics = metrics;
+		this.resourceManager = resourceManager;
+		this.commandServer = commandServer;
+		frameTimings = metrics.getFrameTimings();
+		timestep = new FixedTimestep(PHYSICS_RATE, MAX_FRAME_TIME);
+		simulationClock = new FixedClock(timestep.getStepTime());
+
+		// key actions
+		bind(KeyInput.KEY_F, GridAction.PUSH_ALL, false);
+		bind(KeyInput.KEY_V, GridAction.PUSH_RAND, true);
+		bind(KeyInput.KEY_X, GridAction.SWITCH_SNAKE, false);
+		bind(KeyInput.KEY_G, GridAction.SWITCH_WAVE, false);
+		bind(KeyInput.KEY_U, GridAction.SWITCH_RINGS, false);
+		bind(KeyInput.KEY_H, GridAction.SWITCH_HOLD, false);
+		bind(KeyInput.KEY_O, GridAction.STOP_ALL, false);
+		bind(KeyInput.KEY_M, GridAction.CHANGE_VELOCITY, false);
+		bind(KeyInput.KEY_K, GridAction.SWITCH_FLOOR, false);
+	}
+
+	/**
+	 * Run an action of the array when a key is pressed
+	 * 
+	 * @param keyCode
+	 * @param action
+	 * @param repeat
+	 *            true to run the action every frame while the key is held
+	 */
+	private void bind(final int keyCode, final GridAction action, final boolean repeat) {
+		input.register(keyCode, new KeyHandler() {
+
+			public void keyPressed(final int key) {
+				coolArray.execute(action);
+			}
+		}, repeat);
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see net.stoerbild.demo1.ILevel#init()
+	 * @see net.stoerbild.demo1.ILevel#preload()
 	 */
-	public void init() {
-		// create the cool array
-		coolArray = new CoolArray("coolArray1", 20, 20);
+	public void preload() {
+		// all resources are decoded in parallel while the scene is built
+		if (FLOOR_PLANE) {
+			prefetch();
+		}
+
+		// create the cool array, it is attached with activate
+		coolArray = new CoolArray("coolArray1", 20, 20, simulationClock, RENDER_MODE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.ILevel#activate()
+	 */
+	public void activate() {
+		// render states can only be created in the render thread, the meshes were built by preload
+		coolArray.createRenderStates(renderer);
 		rootNode.attachChild(coolArray);
+		// as box-meshes do not change this will improve performance for about 20%
+		coolArray.lockMeshes();
+		if (THREADED_PHYSICS) {
+			// step time and state of the array are published by the worker thread
+			coolArray.startWorker(simulationClock, PHYSICS_RATE, new GridListener() {
+
+				public void stepped(final CoolGrid grid, final long stepNanos) {
+					frameTimings.record(FrameTimings.Section.PHYSICS, stepNanos);
+					metrics.updateSimulation(grid);
+				}
+			});
+		}
 
-		// createPlane();
+		if (FLOOR_PLANE) {
+			createPlane();
+		}
 		createLights();
 
-		// set all key actions
-		KeyBindingManager.getKeyBindingManager().set("pushall", KeyInput.KEY_F);
-		KeyBindingManager.getKeyBindingManager().set("pushrand", KeyInput.KEY_V);
-		KeyBindingManager.getKeyBindingManager().set("snake", KeyInput.KEY_X);
-		KeyBindingManager.getKeyBindingManager().set("wave", KeyInput.KEY_G);
-		KeyBindingManager.getKeyBindingManager().set("rings", KeyInput.KEY_U);
-		KeyBindingManager.getKeyBindingManager().set("hold", KeyInput.KEY_H);
-		KeyBindingManager.getKeyBindingManager().set("stopall", KeyInput.KEY_O);
-		KeyBindingManager.getKeyBindingManager().set("velocity", KeyInput.KEY_M);
-		KeyBindingManager.getKeyBindingManager().set("floor", KeyInput.KEY_K);
+		// key events are collected by the dispatcher and handled in update
+		KeyInput.get().addListener(input);
 
 		// camera settings
 		renderer.getCamera().setLocation(new Vector3f(94, 44, 96));
 		renderer.getCamera().lookAt(new Vector3f(0, -10, 0), Vector3f.UNIT_Y);
+
+		// the new scene needs the states of the root node (z-buffer, culling, lights)
+		rootNode.updateRenderState();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.ILevel#deactivate()
+	 */
+	public void deactivate() {
+		coolArray.stopWorker();
+		rootNode.detachChild(coolArray);
+		rootNode.clearRenderState(RenderState.StateType.Light);
+		rootNode.updateRenderState();
+		KeyInput.get().removeListener(input);
+		input.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.ILevel#dispose()
+	 */
+	public void dispose() {
+		if (coolArray != null) {
+			// release the display lists of the boxes
+			coolArray.unlockMeshes();
+			coolArray = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.OccluderSource#getOccluderVersion()
+	 */
+	public long getOccluderVersion() {
+		// the array is the only part of the level casting shadows
+		return coolArray != null ? coolArray.getOccluderVersion() : 0;
 	}
 
 	/*
@@ -73,36 +211,43 @@ public class DemoLevel implements ILevel {
 	 * @see net.stoerbild.demo1.ILevel#update()
 	 */
 	public void update() {
-		// handle all key events
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("pushall", false)) {
-			coolArray.pushAll();
-		}
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("pushrand", true)) {
-			coolArray.pushRand();
-		}
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("snake", false)) {
-			coolArray.switchSnake();
-		}
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("wave", false)) {
-			coolArray.switchWave();
-		}
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("rings", false)) {
-			coolArray.switchRings();
-		}
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("hold", false)) {
-			coolArray.switchHold();
-		}
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("stopall", false)) {
-			coolArray.stopAll();
+		// handle all key events since the last frame
+		input.dispatch();
+
+		// run all commands of the remote control received since the last frame
+		if (commandServer != null) {
+			GridCommand command;
+			while ((command = commandServer.poll()) != null) {
+				coolArray.execute(command);
+			}
 		}
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("velocity", false)) {
-			coolArray.changeVelocity();
+
+		// far tiles are drawn with less detail
+		coolArray.updateLod(renderer.getCamera().getLocation());
+
+		// update the array with a fixed timestep (calculate position of boxes), then draw the boxes
+		// interpolated between the last two steps
+		if (coolArray.isWorkerRunning()) {
+			// physics runs in its own thread, only draw the latest heights
+			coolArray.updateFromWorker();
+			return;
 		}
-		if (KeyBindingManager.getKeyBindingManager().isValidCommand("floor", false)) {
-			coolArray.switchFloor();
+		final long physicsStart = System.nanoTime();
+		final int steps = timestep.advance(Timer.getTimer().getTimePerFrame());
+		for (int i = 0; i < steps; i++) {
+			simulationClock.tick();
+			coolArray.update();
 		}
-		// update the array (calculate position of boxes)
-		coolArray.update();
+		frameTimings.record(FrameTimings.Section.PHYSICS, System.nanoTime() - physicsStart);
+		coolArray.updateBoxes(timestep.getAlpha());
+		metrics.updateSimulation(coolArray.getGrid());
+	}
+
+	/**
+	 * Start loading the resources of the floor plane in the background
+	 */
+	private void prefetch() {
+		resourceManager.load(Resources.TEXTURES_COLOR_WHITE_JPG, ResourceManager.IMAGE);
 	}
 
 	/**
@@ -148,6 +293,10 @@ public class DemoLevel implements ILevel {
 
 		assert lightState != null : "lightState is not initialized";
 		rootNode.setRenderState(lightState);
+
+		// all other boxes only cast shadows while they are off the floor
+		coolArray.setShadowLights(new Vector3f[] { light1.getLocation(), light3.getLocation() },
+				SHADOW_LIGHT_DISTANCE);
 	}
 
 	/**
@@ -171,10 +320,8 @@ public class DemoLevel implements ILevel {
 
 		// create and set texture
 		final TextureState textureState = DisplaySystem.getDisplaySystem().getRenderer().createTextureState();
-		final Texture texture = TextureManager.loadTexture(
-				ResourceManager.getResource(Resources.TEXTURES_COLOR_WHITE_JPG),
-				Texture.MinificationFilter.BilinearNearestMipMap,
-				Texture.MagnificationFilter.Bilinear);
+		final Texture texture = resourceManager.getTexture(Resources.TEXTURES_COLOR_WHITE_JPG,
+				Texture.MinificationFilter.BilinearNearestMipMap, Texture.MagnificationFilter.Bilinear);
 		textureState.setTexture(texture);
 		plane.setRenderState(textureState);
 		rootNode.attachChild(plane);
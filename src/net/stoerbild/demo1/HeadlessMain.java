@@ -0,0 +1,90 @@
+package net.stoerbild.demo1;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.stoerbild.demo1.coolarray.CoolGrid;
+import net.stoerbild.demo1.helper.DaemonThreadFactory;
+import net.stoerbild.demo1.helper.FixedClock;
+import net.stoerbild.demo1.helper.FrameTimings;
+
+/**
+ * Runs the box simulation without a display. All actions (snake, wave, rings) are started and the
+ * grid is stepped for a number of frames with a fixed frame time. Used for profiling and regression
+ * testing the physics on machines without a GPU.
+ * <p>
+ * Usage: <code>HeadlessMain [xSize] [zSize] [frames] [timePerFrame] [threads]</code><br>
+ * With more than one thread the physics is stepped in parallel once enough boxes are moving.
+ * 
+ * @author mq
+ */
+public class HeadlessMain {
+
+	private static final int DEFAULT_SIZE = 20;
+	private static final int DEFAULT_FRAMES = 10000;
+	private static final float DEFAULT_TIME_PER_FRAME = 1.0f / 60.0f;
+
+	/**
+	 * Entry Point
+	 * 
+	 * @param args
+	 */
+	public static void main(final String[] args) {
+		final int xSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+		final int zSize = args.length > 1 ? Integer.parseInt(args[1]) : xSize;
+		final int frames = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_FRAMES;
+		final float timePerFrame = args.length > 3 ? Float.parseFloat(args[3]) : DEFAULT_TIME_PER_FRAME;
+		final int threads = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+		final FixedClock clock = new FixedClock(timePerFrame);
+		final CoolGrid grid = new CoolGrid(xSize, zSize, clock);
+		ExecutorService executor = null;
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads - 1, new DaemonThreadFactory("physics"));
+			grid.getPhysics().setExecutor(executor, threads);
+		}
+		grid.pushAll();
+		grid.switchSnake();
+		grid.switchWave();
+		grid.switchRings();
+
+		final FrameTimings timings = new FrameTimings();
+		final long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			final long frameStart = System.nanoTime();
+			clock.tick();
+			grid.update();
+			timings.record(FrameTimings.Section.PHYSICS, System.nanoTime() - frameStart);
+		}
+		final double seconds = (System.nanoTime() - start) / 1.0e9;
+		if (executor != null) {
+			executor.shutdown();
+		}
+
+		final long boxes = (long) xSize * zSize;
+		System.out.println("grid:          " + xSize + "x" + zSize + " (" + boxes + " boxes)");
+		System.out.println("frames:        " + frames + " at " + timePerFrame + "s");
+		System.out.println("threads:       " + threads);
+		System.out.println("time:          " + seconds + "s");
+		System.out.println("frames/s:      " + (long) (frames / seconds));
+		System.out.println("boxes/s:       " + (long) (boxes * frames / seconds));
+		// sum of all heights, compare between runs to detect changes in the physics
+		System.out.println("height sum:    " + heightSum(grid));
+		System.out.println();
+		System.out.print(timings.getReport());
+	}
+
+	/**
+	 * @param grid
+	 * @return sum of the heights of all boxes
+	 */
+	private static double heightSum(final CoolGrid grid) {
+		final float[] heights = grid.getPhysics().getHeights();
+		double sum = 0;
+		for (int i = 0; i < heights.length; i++) {
+			sum += heights[i];
+		}
+		return sum;
+	}
+
+}
@@ -1,20 +1,46 @@
 package net.stoerbild.demo1;
 
 /**
- * Interface for game levels
+ * Interface for game levels. A level goes through these phases, see {@link LevelManager}:
+ * <ol>
+ * <li>{@link #preload()}: load resources and build the scene, may run in a background thread</li>
+ * <li>{@link #activate()}: put the scene on the screen</li>
+ * <li>{@link #update()}: once per frame while the level is active</li>
+ * <li>{@link #deactivate()}: take the scene off the screen</li>
+ * <li>{@link #dispose()}: release everything, the level is not used anymore</li>
+ * </ol>
  * 
  * @author mq
  */
 public interface ILevel {
 
 	/**
-	 * Initialize level
+	 * Load resources and build the scene of the level. Called from a background thread while
+	 * another level is running, so the level must neither change the displayed scene nor use the
+	 * renderer here.
 	 */
-	public void init();
+	public void preload();
+
+	/**
+	 * Attach the scene, lights, camera and input of the level. Called from the render thread, should
+	 * take no longer than a frame.
+	 */
+	public void activate();
 
 	/**
 	 * Update level each frame
 	 */
 	public void update();
 
+	/**
+	 * Detach everything attached by {@link #activate()}. Called from the render thread.
+	 */
+	public void deactivate();
+
+	/**
+	 * Release all resources of the level. Called from the render thread after
+	 * {@link #deactivate()}.
+	 */
+	public void dispose();
+
 }
@@ -0,0 +1,205 @@
+package net.stoerbild.demo1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.stoerbild.demo1.helper.DaemonThreadFactory;
+
+/**
+ * Runs the current level and prepares the next one. The next level is preloaded in a background
+ * thread while the current level keeps running; once it is ready the levels are swapped within one
+ * frame. The old level is disposed in the frame after the swap.
+ * <p>
+ * All methods must be called from the render thread.
+ * 
+ * @author mq
+ */
+public class LevelManager {
+
+	// preloads the next level
+	private final ExecutorService loader = Executors.newSingleThreadExecutor(new DaemonThreadFactory(
+			"level-loader"));
+
+	// running level
+	private ILevel level = null;
+
+	// level being preloaded, and the result of the preload
+	private ILevel next = null;
+	private Future<?> preload = null;
+	// swap as soon as the next level is preloaded
+	private boolean swapRequested = false;
+
+	// deactivated level, disposed with the next update
+	private ILevel previous = null;
+
+	// levels dropped while being preloaded, disposed when their preload is done
+	private final List<ILevel> dropped = new ArrayList<ILevel>();
+	private final List<Future<?>> droppedPreloads = new ArrayList<Future<?>>();
+
+	/**
+	 * Preload and activate the first level. Blocks until the level is loaded.
+	 * 
+	 * @param first
+	 */
+	public void start(final ILevel first) {
+		first.preload();
+		first.activate();
+		level = first;
+	}
+
+	/**
+	 * Start preloading the next level in the background. A level still being preloaded is dropped.
+	 * 
+	 * @param level
+	 *            the next level
+	 * @param swap
+	 *            true to swap to the level as soon as it is preloaded, otherwise see {@link #swap()}
+	 */
+	public void prepare(final ILevel level, final boolean swap) {
+		cancelNext();
+		next = level;
+		swapRequested = swap;
+		preload = loader.submit(new Runnable() {
+
+			public void run() {
+				level.preload();
+			}
+		});
+	}
+
+	/**
+	 * Swap to the prepared level as soon as it is preloaded
+	 */
+	public void swap() {
+		swapRequested = next != null;
+	}
+
+	/**
+	 * Called once per frame: swaps the levels if requested and the next level is ready, then updates
+	 * the running level
+	 * 
+	 * @return true if the levels were swapped in this frame
+	 */
+	public boolean update() {
+		if (previous != null) {
+			previous.dispose();
+			previous = null;
+		}
+		disposeDropped(false);
+		boolean swapped = false;
+		if (swapRequested && isNextReady()) {
+			swapped = swapToNext();
+		}
+		if (level != null) {
+			level.update();
+		}
+		return swapped;
+	}
+
+	/**
+	 * @return true if a level is prepared and its preload is done
+	 */
+	public boolean isNextReady() {
+		return (preload != null) && preload.isDone();
+	}
+
+	/**
+	 * Deactivate the running level and activate the preloaded one
+	 * 
+	 * @return true if the levels were swapped, false if the preload of the next level failed
+	 */
+	private boolean swapToNext() {
+		final ILevel ready = next;
+		final Future<?> done = preload;
+		next = null;
+		preload = null;
+		swapRequested = false;
+		try {
+			done.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (final ExecutionException e) {
+			System.err.println("Can not load level: " + e.getCause());
+			ready.dispose();
+			return false;
+		}
+		if (level != null) {
+			level.deactivate();
+			previous = level;
+		}
+		ready.activate();
+		level = ready;
+		return true;
+	}
+
+	/**
+	 * Drop the level being prepared
+	 */
+	private void cancelNext() {
+		if (next == null) {
+			return;
+		}
+		// the preload can not be interrupted safely, the level is disposed when it is done
+		dropped.add(next);
+		droppedPreloads.add(preload);
+		next = null;
+		preload = null;
+		swapRequested = false;
+	}
+
+	/**
+	 * Dispose the dropped levels
+	 * 
+	 * @param wait
+	 *            true to wait for the preloads, otherwise only levels done with their preload are
+	 *            disposed
+	 */
+	private void disposeDropped(final boolean wait) {
+		for (int i = dropped.size() - 1; i >= 0; i--) {
+			final Future<?> loading = droppedPreloads.get(i);
+			if (!wait && !loading.isDone()) {
+				continue;
+			}
+			try {
+				loading.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (final ExecutionException e) {
+				// the level is dropped anyway
+			}
+			dropped.remove(i).dispose();
+			droppedPreloads.remove(i);
+		}
+	}
+
+	/**
+	 * @return the running level
+	 */
+	public ILevel getLevel() {
+		return level;
+	}
+
+	/**
+	 * Deactivate and dispose all levels and stop the loader thread
+	 */
+	public void shutdown() {
+		cancelNext();
+		disposeDropped(true);
+		if (previous != null) {
+			previous.dispose();
+			previous = null;
+		}
+		if (level != null) {
+			level.deactivate();
+			level.dispose();
+			level = null;
+		}
+		loader.shutdown();
+	}
+
+}
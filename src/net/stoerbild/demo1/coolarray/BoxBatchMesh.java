@@ -0,0 +1,190 @@
+package net.stoerbild.demo1.coolarray;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.renderer.Renderer;
+import com.jme.scene.TriMesh;
+import com.jme.util.geom.BufferUtils;
+
+/**
+ * All boxes of a cool array merged into a single mesh, so the whole array is drawn with one draw
+ * call. The mesh is dynamic: only the y-coordinates of the vertices of moved boxes are rewritten.
+ * Boxes have the same size and layout as {@link CoolBox}.
+ * 
+ * @author mq
+ */
+public class BoxBatchMesh extends TriMesh {
+
+	private static final long serialVersionUID = 3786453318201573467L;
+
+	private static final int VERTICES_PER_BOX = 24;
+	private static final int INDICES_PER_BOX = 36;
+
+	// corners of the 6 faces of a box (x, y, z of the unit cube), counterclockwise seen from outside
+	private static final int[][] FACE_CORNERS = {
+			{ 1, 0, 1, 1, 0, 0, 1, 1, 0, 1, 1, 1 }, // +x
+			{ 0, 0, 0, 0, 0, 1, 0, 1, 1, 0, 1, 0 }, // -x
+			{ 0, 1, 1, 1, 1, 1, 1, 1, 0, 0, 1, 0 }, // +y
+			{ 0, 0, 0, 1, 0, 0, 1, 0, 1, 0, 0, 1 }, // -y
+			{ 0, 0, 1, 1, 0, 1, 1, 1, 1, 0, 1, 1 }, // +z
+			{ 1, 0, 0, 0, 0, 0, 0, 1, 0, 1, 1, 0 } }; // -z
+	private static final float[][] FACE_NORMALS = { { 1, 0, 0 }, { -1, 0, 0 }, { 0, 1, 0 }, { 0, -1, 0 },
+			{ 0, 0, 1 }, { 0, 0, -1 } };
+
+	// true for all vertices of a box at the top
+	private static final boolean[] TOP_VERTEX = new boolean[VERTICES_PER_BOX];
+	static {
+		for (int f = 0; f < FACE_CORNERS.length; f++) {
+			for (int c = 0; c < 4; c++) {
+				TOP_VERTEX[f * 4 + c] = FACE_CORNERS[f][c * 3 + 1] == 1;
+			}
+		}
+	}
+
+	private final int xSize;
+	private final int zSize;
+
+	// bound of the mesh, only the y-extent changes
+	private final BoundingBox bound;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name
+	 *            of the mesh
+	 * @param xSize
+	 * @param zSize
+	 */
+	public BoxBatchMesh(final String name, final int xSize, final int zSize) {
+		super(name);
+		this.xSize = xSize;
+		this.zSize = zSize;
+		final int boxes = xSize * zSize;
+		final FloatBuffer vertices = BufferUtils.createVector3Buffer(boxes * VERTICES_PER_BOX);
+		final FloatBuffer normals = BufferUtils.createVector3Buffer(boxes * VERTICES_PER_BOX);
+		final IntBuffer indices = BufferUtils.createIntBuffer(boxes * INDICES_PER_BOX);
+		for (int j = 0; j < zSize; j++) {
+			for (int i = 0; i < xSize; i++) {
+				final int firstVertex = (j * xSize + i) * VERTICES_PER_BOX;
+				final float xOffset = CoolBox.SPACING * (i - 1);
+				final float zOffset = CoolBox.SPACING * (j - 1);
+				for (int f = 0; f < FACE_CORNERS.length; f++) {
+					for (int c = 0; c < 4; c++) {
+						vertices.put(xOffset + FACE_CORNERS[f][c * 3] * CoolBox.WIDTH);
+						vertices.put(FACE_CORNERS[f][c * 3 + 1] * CoolBox.HEIGHT);
+						vertices.put(zOffset + FACE_CORNERS[f][c * 3 + 2] * CoolBox.WIDTH);
+						normals.put(FACE_NORMALS[f]);
+					}
+					// two triangles per face
+					final int v = firstVertex + f * 4;
+					indices.put(v).put(v + 1).put(v + 2);
+					indices.put(v).put(v + 2).put(v + 3);
+				}
+			}
+		}
+		reconstruct(vertices, normals, null, null, indices);
+
+		// x and z extent never change
+		bound = new BoundingBox();
+		CoolBox.setGridBound(bound, 0, 0, xSize, zSize, 0, 0);
+		setModelBound(bound);
+	}
+
+	/**
+	 * Move all boxes that changed to their simulated positions (see
+	 * {@link CoolArray#updateBoxes(float)}). The bound follows from the heights of the moving boxes,
+	 * resting boxes are always on the floor.
+	 * 
+	 * @param physics
+	 *            simulation of the boxes
+	 * @param alpha
+	 *            interpolation between the last two simulation steps (0 to 1)
+	 */
+	public void update(final BoxPhysics physics, final float alpha) {
+		final float[] heights = physics.getHeights();
+		final int[] rested = physics.getRested();
+		final int restedCount = physics.getRestedCount();
+		final int activeCount = physics.getActiveCount();
+		if ((restedCount == 0) && (activeCount == 0)) {
+			// nothing moved, the mesh is still valid
+			return;
+		}
+		for (int n = 0; n < restedCount; n++) {
+			final int i = rested[n];
+			setHeight(i, heights[i]);
+		}
+		physics.clearRested();
+		float minHeight = 0.0f;
+		float maxHeight = 0.0f;
+		final int[] active = physics.getActive();
+		for (int n = 0; n < activeCount; n++) {
+			final int i = active[n];
+			final float height = physics.getInterpolatedHeight(i, alpha);
+			setHeight(i, height);
+			if (height < minHeight) {
+				minHeight = height;
+			} else if (height > maxHeight) {
+				maxHeight = height;
+			}
+		}
+		updateHeightBound(minHeight, maxHeight);
+	}
+
+	/**
+	 * Move a box to a new height. Call {@link #updateHeightBound(float, float)} after all boxes have
+	 * been moved.
+	 * 
+	 * @param i
+	 *            index of the box
+	 * @param height
+	 *            y-translation of the box
+	 */
+	public void setHeight(final int i, final float height) {
+		final FloatBuffer vertices = getVertexBuffer();
+		final int first = i * VERTICES_PER_BOX * 3 + 1;
+		for (int v = 0; v < VERTICES_PER_BOX; v++) {
+			vertices.put(first + v * 3, TOP_VERTEX[v] ? height + CoolBox.HEIGHT : height);
+		}
+	}
+
+	/**
+	 * Update the bound of the mesh after boxes have been moved. No need to look at all vertices, the
+	 * caller knows the height range of the boxes.
+	 * 
+	 * @param minHeight
+	 *            lowest y-translation of all boxes
+	 * @param maxHeight
+	 *            highest y-translation of all boxes
+	 */
+	public void updateHeightBound(final float minHeight, final float maxHeight) {
+		CoolBox.setGridBound(bound, 0, 0, xSize, zSize, minHeight, maxHeight);
+		// vertices changed, shadow volumes have to be rebuilt
+		setHasDirtyVertices(true);
+	}
+
+	/**
+	 * The mesh changes every frame, so it is never compiled into a display list
+	 * 
+	 * @see com.jme.scene.Geometry#lockMeshes(com.jme.renderer.Renderer)
+	 */
+	@Override
+	public void lockMeshes(final Renderer r) {
+	}
+
+	/**
+	 * @return number of boxes in x-direction
+	 */
+	public int getXSize() {
+		return xSize;
+	}
+
+	/**
+	 * @return number of boxes in z-direction
+	 */
+	public int getZSize() {
+		return zSize;
+	}
+
+}
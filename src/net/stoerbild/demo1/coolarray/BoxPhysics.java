@@ -0,0 +1,482 @@
+package net.stoerbild.demo1.coolarray;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Physics for a whole grid of boxes. Heights and velocities of all boxes are kept in flat float
+ * arrays (one entry per box, same order as the boxes of the cool array), so a physics step is a
+ * single linear pass over primitive data instead of a walk over scene nodes.
+ * <p>
+ * Only moving boxes are stepped: pushed boxes are added to a compact list of active boxes and removed
+ * again as soon as they rest on the floor. The cost of a step depends on the number of moving boxes,
+ * not on the size of the grid.
+ * <p>
+ * The height of each box before the last step is kept as well, so the boxes can be drawn interpolated
+ * between the last two steps (see {@link #getInterpolatedHeight(int, float)}).
+ * <p>
+ * Optionally a step can be split into bands of active boxes that are calculated in parallel on an
+ * executor (see {@link #setExecutor(Executor, int)}). Each box only depends on itself, so the result is
+ * identical to the serial step.
+ * 
+ * @author mq
+ */
+public class BoxPhysics {
+
+	private static final float GRAVITY = 37.8f;
+	private static final float FRICTION = 2.0f;
+
+	// boxes higher than this will bounce back
+	private static final float CEILING = 1000f;
+
+	// default minimum of moving boxes for a parallel step (about a 200x200 grid in motion)
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 40000;
+
+	// y-translation of all boxes
+	private final float[] heights;
+	// y-translation of all boxes before the last step
+	private final float[] previousHeights;
+	// y-velocity of all boxes
+	private final float[] velocities;
+
+	// indices of all boxes that are moving (active), only these are stepped
+	private final int[] active;
+	private int activeCount = 0;
+	// position of each box in the active list or -1 if it is resting
+	private final int[] activeSlot;
+
+	// indices of all boxes that came to rest since the last call of clearRested()
+	private final int[] rested;
+	private int restedCount = 0;
+	private final boolean[] inRested;
+
+	// parallel step: executor and one task per band of active boxes (null if steps are serial)
+	private Executor executor = null;
+	private BandTask[] bandTasks = null;
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	// boxes that came to rest during a parallel step
+	private final boolean[] cameToRest;
+	// bands of the current parallel step still running
+	private int pendingBands = 0;
+	private Throwable bandFailure = null;
+	private final Object bandLock = new Object();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param size
+	 *            number of boxes
+	 */
+	public BoxPhysics(final int size) {
+		heights = new float[size];
+		previousHeights = new float[size];
+		velocities = new float[size];
+		active = new int[size];
+		activeSlot = new int[size];
+		Arrays.fill(activeSlot, -1);
+		rested = new int[size];
+		inRested = new boolean[size];
+		cameToRest = new boolean[size];
+	}
+
+	/**
+	 * Calculate new positions and velocities of all moving boxes. Boxes that come to rest are removed
+	 * from the active boxes.
+	 * 
+	 * @param interpolation
+	 *            frame averaging
+	 * @param floorEnabled
+	 */
+	public void step(final float interpolation, final boolean floorEnabled) {
+		if ((executor != null) && (activeCount >= parallelThreshold)) {
+			stepParallel(interpolation, floorEnabled);
+			return;
+		}
+		int n = 0;
+		while (n < activeCount) {
+			final int i = active[n];
+			if (stepBox(i, interpolation, floorEnabled)) {
+				sleep(n);
+			} else {
+				n++;
+			}
+		}
+	}
+
+	/**
+	 * Parallel step. All bands are calculated first, then boxes that came to rest are removed in the
+	 * same order as {@link #step(float, boolean)} does it serially, so the active and rested boxes are
+	 * identical as well.
+	 * 
+	 * @param interpolation
+	 *            frame averaging
+	 * @param floorEnabled
+	 */
+	private void stepParallel(final float interpolation, final boolean floorEnabled) {
+		final int bands = bandTasks.length;
+		final int bandSize = (activeCount + bands - 1) / bands;
+		synchronized (bandLock) {
+			pendingBands = bands;
+			bandFailure = null;
+		}
+		// the last band is calculated by the calling thread
+		for (int b = 0; b < bands; b++) {
+			final BandTask task = bandTasks[b];
+			task.from = Math.min(b * bandSize, activeCount);
+			task.to = Math.min(task.from + bandSize, activeCount);
+			task.interpolation = interpolation;
+			task.floorEnabled = floorEnabled;
+			if (b < bands - 1) {
+				executor.execute(task);
+			} else {
+				task.run();
+			}
+		}
+		synchronized (bandLock) {
+			while (pendingBands > 0) {
+				try {
+					bandLock.wait();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for physics step", e);
+				}
+			}
+			if (bandFailure != null) {
+				throw new IllegalStateException("Parallel physics step failed", bandFailure);
+			}
+		}
+
+		// remove resting boxes
+		int n = 0;
+		while (n < activeCount) {
+			final int i = active[n];
+			if (cameToRest[i]) {
+				cameToRest[i] = false;
+				sleep(n);
+			} else {
+				n++;
+			}
+		}
+	}
+
+	/**
+	 * Calculate new position and velocity of a single box
+	 * 
+	 * @param i
+	 *            index of the box
+	 * @param interpolation
+	 *            frame averaging
+	 * @param floorEnabled
+	 * @return true if the box is resting on the floor now
+	 */
+	private boolean stepBox(final int i, final float interpolation, final boolean floorEnabled) {
+		final float currentPos = heights[i];
+		float velocity = velocities[i];
+		previousHeights[i] = currentPos;
+		// box is not moving
+		if ((velocity == 0.0f) && (currentPos == 0.0f)) {
+			return true;
+		}
+
+		// floor
+		if (floorEnabled) {
+			// stop box from passing the floor (top-down or bottom-up).
+			// The "2-multiplier" is just for safety reasons. Without it boxes will sometimes pass the floor :-/
+			final float nextPos = currentPos + (velocity * interpolation * 2);
+			if (((nextPos <= 0.0f) && (currentPos > 0.0f)) || ((nextPos >= 0.0f) && (currentPos < 0.0f))) {
+				velocities[i] = 0;
+				heights[i] = 0.0f;
+				return true;
+			}
+		} else {
+			// stop the box if it is not really moving anymore (snap into the floor)
+			if ((Math.abs(velocity) < 0.2f) && (Math.abs(currentPos) < 0.3f)) {
+				velocities[i] = 0;
+				heights[i] = 0.0f;
+				return true;
+			}
+		}
+
+		// ceiling (bounce-back)
+		if (currentPos > CEILING) {
+			velocity = -velocity;
+		}
+
+		// gravity
+		if (currentPos > 0) {
+			velocity -= GRAVITY * interpolation;
+		} else {
+			velocity += GRAVITY * interpolation;
+		}
+
+		// friction
+		if (velocity > 0) {
+			velocity -= FRICTION * interpolation;
+		} else {
+			velocity += FRICTION * interpolation;
+		}
+
+		velocities[i] = velocity;
+		heights[i] = currentPos + (velocity * interpolation);
+		return false;
+	}
+
+	/**
+	 * Enable parallel steps. Once at least {@link #setParallelThreshold(int) threshold} boxes are
+	 * moving, each step is split into the given number of bands; all but one band are executed on the
+	 * executor. Active boxes are ordered like the grid after a push of the whole array, so the bands
+	 * are rows of the grid in that case.
+	 * 
+	 * @param executor
+	 *            executes the bands, null for serial steps only
+	 * @param bands
+	 *            number of bands per step (usually the number of cores)
+	 */
+	public void setExecutor(final Executor executor, final int bands) {
+		if ((executor == null) || (bands < 2)) {
+			this.executor = null;
+			bandTasks = null;
+			return;
+		}
+		this.executor = executor;
+		bandTasks = new BandTask[bands];
+		for (int b = 0; b < bands; b++) {
+			bandTasks[b] = new BandTask();
+		}
+	}
+
+	/**
+	 * Set the minimum of moving boxes for a parallel step. Smaller steps are always calculated serially.
+	 * 
+	 * @param parallelThreshold
+	 *            the parallelThreshold to set
+	 */
+	public void setParallelThreshold(final int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @return the parallelThreshold
+	 */
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * Push a single box into the air
+	 * 
+	 * @param i
+	 *            index of the box
+	 * @param force
+	 */
+	public void push(final int i, final float force) {
+		velocities[i] += force;
+		wake(i);
+	}
+
+	/**
+	 * Push several boxes into the air
+	 * 
+	 * @param indices
+	 *            of the boxes
+	 * @param from
+	 *            first entry in indices
+	 * @param to
+	 *            end (exclusive) in indices
+	 * @param force
+	 */
+	public void push(final int[] indices, final int from, final int to, final float force) {
+		for (int n = from; n < to; n++) {
+			final int i = indices[n];
+			velocities[i] += force;
+			wake(i);
+		}
+	}
+
+	/**
+	 * Push all boxes into the air
+	 * 
+	 * @param force
+	 */
+	public void pushAll(final float force) {
+		for (int i = 0; i < velocities.length; i++) {
+			velocities[i] += force;
+			wake(i);
+		}
+	}
+
+	/**
+	 * Add a box to the active boxes
+	 * 
+	 * @param i
+	 *            index of the box
+	 */
+	private void wake(final int i) {
+		if (activeSlot[i] >= 0) {
+			return;
+		}
+		// no interpolation until the box is stepped the first time
+		previousHeights[i] = heights[i];
+		activeSlot[i] = activeCount;
+		active[activeCount++] = i;
+	}
+
+	/**
+	 * Remove a box from the active boxes and add it to the rested boxes. The last active box takes its
+	 * slot.
+	 * 
+	 * @param slot
+	 *            position in the list of active boxes
+	 */
+	private void sleep(final int slot) {
+		final int i = active[slot];
+		final int last = active[--activeCount];
+		active[slot] = last;
+		activeSlot[last] = slot;
+		activeSlot[i] = -1;
+		previousHeights[i] = heights[i];
+		if (!inRested[i]) {
+			inRested[i] = true;
+			rested[restedCount++] = i;
+		}
+	}
+
+	/**
+	 * Stop interpolation of all moving boxes at their current height (e.g. while the boxes are held)
+	 */
+	public void resetInterpolation() {
+		for (int n = 0; n < activeCount; n++) {
+			final int i = active[n];
+			previousHeights[i] = heights[i];
+		}
+	}
+
+	/**
+	 * @param i
+	 *            index of the box
+	 * @return current height of the box
+	 */
+	public float getHeight(final int i) {
+		return heights[i];
+	}
+
+	/**
+	 * Direct access to the heights of all boxes. Must not be modified by the caller.
+	 * 
+	 * @return heights of all boxes
+	 */
+	public float[] getHeights() {
+		return heights;
+	}
+
+	/**
+	 * Direct access to the heights of all boxes before the last step (equal to the heights for resting
+	 * boxes). Must not be modified by the caller.
+	 * 
+	 * @return previous heights of all boxes
+	 */
+	public float[] getPreviousHeights() {
+		return previousHeights;
+	}
+
+	/**
+	 * Height of a box between the last two steps
+	 * 
+	 * @param i
+	 *            index of the box
+	 * @param alpha
+	 *            0 for the height before the last step, 1 for the current height
+	 * @return interpolated height
+	 */
+	public float getInterpolatedHeight(final int i, final float alpha) {
+		final float previous = previousHeights[i];
+		return previous + (heights[i] - previous) * alpha;
+	}
+
+	/**
+	 * Indices of all moving boxes. Only the first {@link #getActiveCount()} entries are valid. Must not
+	 * be modified by the caller.
+	 * 
+	 * @return indices of moving boxes
+	 */
+	public int[] getActive() {
+		return active;
+	}
+
+	/**
+	 * Indices of all boxes that came to rest since the last call of {@link #clearRested()}. Only the
+	 * first {@link #getRestedCount()} entries are valid. Must not be modified by the caller.
+	 * 
+	 * @return indices of rested boxes
+	 */
+	public int[] getRested() {
+		return rested;
+	}
+
+	/**
+	 * @return number of boxes that came to rest since the last call of {@link #clearRested()}
+	 */
+	public int getRestedCount() {
+		return restedCount;
+	}
+
+	/**
+	 * Forget all rested boxes, usually after they have been drawn at their final position
+	 */
+	public void clearRested() {
+		for (int n = 0; n < restedCount; n++) {
+			inRested[rested[n]] = false;
+		}
+		restedCount = 0;
+	}
+
+	/**
+	 * @return number of boxes currently moving
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * @return number of boxes
+	 */
+	public int getSize() {
+		return heights.length;
+	}
+
+	/**
+	 * Calculates one band of active boxes of a parallel step. Tasks are reused for every step.
+	 */
+	private class BandTask implements Runnable {
+
+		// range in the list of active boxes
+		private int from;
+		private int to;
+		private float interpolation;
+		private boolean floorEnabled;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			try {
+				for (int n = from; n < to; n++) {
+					final int i = active[n];
+					cameToRest[i] = stepBox(i, interpolation, floorEnabled);
+				}
+			} catch (final Throwable t) {
+				synchronized (bandLock) {
+					bandFailure = t;
+				}
+			} finally {
+				synchronized (bandLock) {
+					pendingBands--;
+					bandLock.notifyAll();
+				}
+			}
+		}
+	}
+
+}
@@ -1,39 +1,100 @@
 package net.stoerbild.demo1.coolarray;
 
-import java.util.ArrayList;
-
+import net.stoerbild.demo1.helper.Clock;
+import net.stoerbild.demo1.helper.FixedClock;
+import net.stoerbild.demo1.helper.OccluderSource;
+import net.stoerbild.demo1.helper.TimerClock;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.math.FastMath;
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+import com.jme.renderer.Renderer;
+import com.jme.scene.Controller;
+import com.jme.scene.Geometry;
 import com.jme.scene.Node;
+import com.jme.scene.Spatial;
 import com.jme.util.Timer;
 
 /**
- * Represents an array of boxes
+ * Represents an array of boxes. The simulation itself is done by {@link CoolGrid}, this node only
+ * moves the boxes to the simulated heights.
+ * <p>
+ * The boxes are either separate scene nodes (one draw call per box) or merged into one
+ * {@link BoxBatchMesh} (one draw call for the whole array), see {@link RenderMode}.
+ * <p>
+ * Separate box nodes are grouped into {@link CoolTile tiles} of {@link #TILE_SIZE}x{@link #TILE_SIZE}
+ * boxes, each with its own bound, so tiles outside the view are culled as a whole. Only tiles with
+ * boxes moved since the last frame get their world data updated, and the bound of the array is
+ * calculated from the height range of the boxes instead of merging the bounds of all tiles. Only if
+ * the array itself is moved all boxes are updated.
+ * <p>
+ * In {@link RenderMode#LOD} tiles far from the camera show a {@link TileHeightfield} instead of their
+ * boxes, these tiles do not cast shadows (see {@link #updateLod(Vector3f)}).
+ * <p>
+ * Box nodes only cast shadows while they are off the floor or near a shadow casting light (see
+ * {@link #setShadowLights(Vector3f[], float)}), so resting boxes need no shadow volumes.
  * 
  * @author mq
  */
-public class CoolArray extends Node {
+public class CoolArray extends Node implements OccluderSource {
 
-	// hold all boxes at their position
-	private boolean hold;
+	private static final long serialVersionUID = -6523618470157024778L;
 
-	private float pushVelocity;
-	private boolean floorEnabled;
+	/**
+	 * How the boxes are put into the scene graph
+	 */
+	public enum RenderMode {
+		/** every box is a node with its own mesh */
+		BOXES,
+		/** all boxes are merged into a single dynamic mesh */
+		BATCHED,
+		/** box nodes near the camera, one heightfield per tile far away */
+		LOD
+	}
 
-	private static final long serialVersionUID = -6523618470157024778L;
+	/** number of boxes per tile in x- and z-direction */
+	public static final int TILE_SIZE = 16;
+
+	/** default distance from the camera to a tile at which the tile switches to the heightfield */
+	public static final float DEFAULT_LOD_DISTANCE = 200.0f;
+	// tiles switch back to boxes a bit closer, so they do not flicker at the switching distance
+	private static final float LOD_HYSTERESIS = 0.1f;
+
+	private final RenderMode renderMode;
+
+	// tiles in BOXES and LOD mode (row by row), null otherwise
+	private final CoolTile[] tiles;
+	private final int xTiles;
+
+	// mesh of all boxes in BATCHED mode, null otherwise
+	private final BoxBatchMesh batchMesh;
+
+	// simulation of all boxes
+	private final CoolGrid grid;
+
+	// simulates the grid in its own thread, null if the grid is updated by the caller
+	private PhysicsWorker worker = null;
+	// step of the snapshot the boxes are drawn from, only used with the worker
+	private long drawnSequence = 0;
 
-	private final ArrayList<CoolBox> boxes;
+	// distance from the camera at which tiles switch to the heightfield (LOD mode)
+	private float lodDistance = DEFAULT_LOD_DISTANCE;
 
-	// steps for the actions
-	private int currentSnake;
-	private int currentWave;
-	private int currentRing;
-	// timestamps last actions
-	private float lastSnakeAction;
-	private float lastWaveAction;
-	private float lastRingAction;
+	// tiles with boxes moved or detail switched since the last updateWorldData (BOXES and LOD mode)
+	private final int[] movedTiles;
+	private int movedCount = 0;
+	// all boxes need an update (first frame or array moved)
+	private boolean fullUpdate = true;
+	private final Vector3f lastWorldTranslation = new Vector3f();
+	private final Quaternion lastWorldRotation = new Quaternion();
+	private final Vector3f lastWorldScale = new Vector3f();
 
-	// size of the cool array
-	int xSize;
-	int zSize;
+	// height range of all boxes, the bound of the array follows from it
+	private float minHeight = 0.0f;
+	private float maxHeight = 0.0f;
+	private boolean boundChanged = true;
+	private final BoundingBox localBound = new BoundingBox();
 
 	/**
 	 * Constructor
@@ -54,281 +115,550 @@ public class CoolArray extends Node {
 	 * @param zSize
 	 */
 	public CoolArray(final String name, final int xSize, final int zSize) {
+		this(name, xSize, zSize, new TimerClock(Timer.getTimer()));
+	}
+
+	/**
+	 * Constuctor
+	 * 
+	 * @param name
+	 *            The name of the array scene node
+	 * @param xSize
+	 * @param zSize
+	 * @param clock
+	 *            time source for physics and actions
+	 */
+	public CoolArray(final String name, final int xSize, final int zSize, final Clock clock) {
+		this(name, xSize, zSize, clock, RenderMode.BOXES);
+	}
+
+	/**
+	 * Constuctor
+	 * 
+	 * @param name
+	 *            The name of the array scene node
+	 * @param xSize
+	 * @param zSize
+	 * @param clock
+	 *            time source for physics and actions
+	 * @param renderMode
+	 *            how the boxes are put into the scene graph
+	 */
+	public CoolArray(final String name, final int xSize, final int zSize, final Clock clock,
+			final RenderMode renderMode) {
 		super(name);
-		this.xSize = xSize;
-		this.zSize = zSize;
-		// create an array of cool boxes
-		boxes = new ArrayList<CoolBox>();
-		for (int j = 0; j < zSize; j++) {
-			for (int i = 0; i < xSize; i++) {
-				final CoolBox box = new CoolBox(i, j);
-				attachChild(box);
-				boxes.add(box);
+		this.renderMode = renderMode;
+		grid = new CoolGrid(xSize, zSize, clock);
+		if (renderMode == RenderMode.BATCHED) {
+			tiles = null;
+			xTiles = 0;
+			movedTiles = null;
+			batchMesh = new BoxBatchMesh(name + "-batch", xSize, zSize);
+			attachChild(batchMesh);
+			setRenderQueueMode(Renderer.QUEUE_OPAQUE);
+		} else {
+			batchMesh = null;
+			// create an array of cool boxes, grouped into tiles
+			xTiles = (xSize + TILE_SIZE - 1) / TILE_SIZE;
+			final int zTiles = (zSize + TILE_SIZE - 1) / TILE_SIZE;
+			tiles = new CoolTile[xTiles * zTiles];
+			movedTiles = new int[tiles.length];
+			for (int j = 0; j < zTiles; j++) {
+				for (int i = 0; i < xTiles; i++) {
+					final int xStart = i * TILE_SIZE;
+					final int zStart = j * TILE_SIZE;
+					final CoolTile tile = new CoolTile(name + "-tile" + i + "_" + j, xStart, zStart, Math.min(
+							TILE_SIZE, xSize - xStart), Math.min(TILE_SIZE, zSize - zStart));
+					attachChild(tile);
+					tiles[j * xTiles + i] = tile;
+				}
 			}
+			// the box meshes never change, they should be locked (see lockMeshes) once the array is
+			// attached in the render thread
 		}
-		// as box-meshes do not change this will improve performance for about 20%
-		lockMeshes();
+		// render states are created with createRenderStates, so the array can be built in any thread
+	}
 
-		// reset all actions
-		resetActions();
-		lastSnakeAction = 0;
-		lastWaveAction = 0;
-		lastRingAction = 0;
-		pushVelocity = 35.0f;
-		floorEnabled = true;
-		hold = false;
+	/**
+	 * Create the render states of the array: one material for all boxes, the batched mesh and the
+	 * heightfields. Must be called from the render thread before the array is drawn.
+	 * 
+	 * @param renderer
+	 */
+	public void createRenderStates(final Renderer renderer) {
+		setRenderState(CoolBox.createMaterialState(renderer));
 	}
 
 	/**
-	 * Update the complete array (position of all boxes)
+	 * Do one simulation step of the array (running actions and physics). The boxes are not moved, see
+	 * {@link #updateBoxes(float)}.
 	 */
 	public void update() {
-		if (hold) {
+		grid.update();
+	}
+
+	/**
+	 * Move all boxes that changed to their simulated positions
+	 * 
+	 * @param alpha
+	 *            interpolation between the last two simulation steps (0 to 1)
+	 */
+	public void updateBoxes(final float alpha) {
+		if (batchMesh != null) {
+			batchMesh.update(grid.getPhysics(), alpha);
 			return;
 		}
-		// update running array actions
-		snake();
-		wave();
-		ring();
-		// calculate & update new positions
-		for (final CoolBox box : boxes) {
-			box.update(floorEnabled);
+		final BoxPhysics physics = grid.getPhysics();
+		// boxes that came to rest are moved to their final position
+		final float[] heights = physics.getHeights();
+		final int[] rested = physics.getRested();
+		final int restedCount = physics.getRestedCount();
+		for (int n = 0; n < restedCount; n++) {
+			final int i = rested[n];
+			moveBox(i, heights[i]);
 		}
+		physics.clearRested();
+		// moving boxes are interpolated
+		float newMinHeight = 0.0f;
+		float newMaxHeight = 0.0f;
+		final int[] active = physics.getActive();
+		final int activeCount = physics.getActiveCount();
+		for (int n = 0; n < activeCount; n++) {
+			final int i = active[n];
+			final float height = physics.getInterpolatedHeight(i, alpha);
+			moveBox(i, height);
+			if (height < newMinHeight) {
+				newMinHeight = height;
+			} else if (height > newMaxHeight) {
+				newMaxHeight = height;
+			}
+		}
+		setHeightRange(newMinHeight, newMaxHeight);
 	}
 
 	/**
-	 * Push whole array into the air
+	 * Move a box node and remember its tile for the next world data update
+	 * 
+	 * @param i
+	 *            index of the box
+	 * @param height
 	 */
-	public void pushAll() {
-		if (hold) {
+	private void moveBox(final int i, final float height) {
+		final int x = i % grid.getXSize();
+		final int z = i / grid.getXSize();
+		final int tile = (z / TILE_SIZE) * xTiles + x / TILE_SIZE;
+		if (tiles[tile].moveBox(x % TILE_SIZE, z % TILE_SIZE, height)) {
+			movedTiles[movedCount++] = tile;
+		}
+	}
+
+	/**
+	 * Switch tiles between their boxes and their heightfield by the distance to the camera. Does
+	 * nothing if the array is not in {@link RenderMode#LOD}. Call once per frame before the scene is
+	 * updated.
+	 * 
+	 * @param location
+	 *            of the camera
+	 */
+	public void updateLod(final Vector3f location) {
+		if (renderMode != RenderMode.LOD) {
 			return;
 		}
-		for (final CoolBox box : boxes) {
-			box.push(pushVelocity);
+		for (int i = 0; i < tiles.length; i++) {
+			final CoolTile tile = tiles[i];
+			if (tile.getWorldBound() == null) {
+				// not updated yet
+				continue;
+			}
+			final float distance = distanceToEdge((BoundingBox) tile.getWorldBound(), location);
+			final boolean far = tile.isFar() ? distance > lodDistance * (1.0f - LOD_HYSTERESIS)
+					: distance > lodDistance;
+			if (tile.setFar(far)) {
+				movedTiles[movedCount++] = i;
+			}
 		}
 	}
 
 	/**
-	 * Enable/Disable floor
+	 * Same as {@link BoundingBox#distanceToEdge(Vector3f)}, without creating a temporary vector
+	 * 
+	 * @param bound
+	 * @param location
+	 * @return distance from the location to the bound, 0 inside the bound
 	 */
-	public void switchFloor() {
-		floorEnabled = !floorEnabled;
+	private static float distanceToEdge(final BoundingBox bound, final Vector3f location) {
+		final Vector3f center = bound.getCenter();
+		final float dx = Math.max(Math.abs(location.x - center.x) - bound.xExtent, 0.0f);
+		final float dy = Math.max(Math.abs(location.y - center.y) - bound.yExtent, 0.0f);
+		final float dz = Math.max(Math.abs(location.z - center.z) - bound.zExtent, 0.0f);
+		return FastMath.sqrt(dx * dx + dy * dy + dz * dz);
 	}
 
 	/**
-	 * Push a random box into the air
+	 * @param newMinHeight
+	 *            lowest y-translation of all boxes
+	 * @param newMaxHeight
+	 *            highest y-translation of all boxes
 	 */
-	public void pushRand() {
-		if (hold) {
-			return;
+	private void setHeightRange(final float newMinHeight, final float newMaxHeight) {
+		if ((newMinHeight != minHeight) || (newMaxHeight != maxHeight)) {
+			minHeight = newMinHeight;
+			maxHeight = newMaxHeight;
+			boundChanged = true;
 		}
-		final double rand = Math.random();
-		final int n = (int) Math.round(rand * (boxes.size() - 1));
-		boxes.get(n).push(pushVelocity);
 	}
 
-	/**
-	 * A wave going over the array
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.scene.Node#updateWorldData(float)
 	 */
-	private void wave() {
-		if (currentWave < 0) {
+	@Override
+	public void updateWorldData(final float time) {
+		if (tiles == null) {
+			super.updateWorldData(time);
 			return;
 		}
-		// restart wave after it is finished
-		if (currentWave >= zSize) {
-			currentWave = 0;
-			return;
+		// own controllers and transformation (see Spatial#updateWorldData)
+		for (int i = 0; i < getControllerCount(); i++) {
+			final Controller controller = getController(i);
+			if ((controller != null) && controller.isActive()) {
+				controller.update(time);
+			}
 		}
-
-		// push the according boxes into the air
-		if ((Timer.getTimer().getTimeInSeconds() - lastWaveAction) > 0.10f) {
-			lastWaveAction = Timer.getTimer().getTimeInSeconds();
-			// check which boxes should be pushed
-			for (int i = 0; i < boxes.size(); i++) {
-				if (getZ(i) == currentWave) {
-					boxes.get(i).push(pushVelocity);
-				}
+		updateWorldVectors();
+
+		if (fullUpdate || !worldTranslation.equals(lastWorldTranslation) || !worldRotation.equals(lastWorldRotation)
+				|| !worldScale.equals(lastWorldScale)) {
+			// array moved, all boxes move with it
+			lastWorldTranslation.set(worldTranslation);
+			lastWorldRotation.set(worldRotation);
+			lastWorldScale.set(worldScale);
+			for (int i = 0; i < tiles.length; i++) {
+				tiles[i].requestFullUpdate();
+				tiles[i].updateGeometricState(time, false);
+			}
+			fullUpdate = false;
+			boundChanged = true;
+		} else {
+			// tiles without moved boxes are skipped
+			for (int n = 0; n < movedCount; n++) {
+				tiles[movedTiles[n]].updateGeometricState(time, false);
 			}
-			currentWave = currentWave + 1;
 		}
+		movedCount = 0;
+	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.scene.Node#updateWorldBound()
+	 */
+	@Override
+	public void updateWorldBound() {
+		if (tiles == null) {
+			super.updateWorldBound();
+			return;
+		}
+		if (!boundChanged && (worldBound != null)) {
+			return;
+		}
+		CoolBox.setGridBound(localBound, 0, 0, grid.getXSize(), grid.getZSize(), minHeight, maxHeight);
+		worldBound = localBound.transform(worldRotation, worldTranslation, worldScale, worldBound);
+		boundChanged = false;
 	}
 
 	/**
-	 * Create a snake going over the array
+	 * Simulate the grid in its own thread from now on. The grid must not be updated by the caller
+	 * anymore, see {@link #updateFromWorker()}.
+	 * 
+	 * @param clock
+	 *            clock the grid was created with, ticked by the worker
+	 * @param stepsPerSecond
+	 * @param listener
+	 *            called after each step in the worker thread, may be null
 	 */
-	private void snake() {
-		if (currentSnake < 0) {
+	public void startWorker(final FixedClock clock, final float stepsPerSecond, final GridListener listener) {
+		if (worker != null) {
 			return;
 		}
-		// restart snake after it is finished
-		if (currentSnake >= boxes.size()) {
-			currentSnake = 0;
+		drawnSequence = 0;
+		worker = new PhysicsWorker(grid, clock, stepsPerSecond);
+		worker.setListener(listener);
+		worker.start();
+	}
+
+	/**
+	 * Stop the worker thread, the grid is updated by the caller again
+	 */
+	public void stopWorker() {
+		if (worker == null) {
 			return;
 		}
+		worker.stop();
+		// boxes that came to rest since the last frame are only known by the last snapshot
+		updateFromSnapshot(worker.acquire(), 1.0f);
+		worker = null;
+		// moving boxes are drawn at their current height until the next step
+		grid.getPhysics().resetInterpolation();
+	}
+
+	/**
+	 * @return true if the grid is simulated in its own thread
+	 */
+	public boolean isWorkerRunning() {
+		return worker != null;
+	}
+
+	/**
+	 * Move all boxes to the latest heights published by the worker, interpolated by the time since
+	 * that step. Only the boxes in the snapshot are moved, all others did not change.
+	 */
+	public void updateFromWorker() {
+		final HeightSnapshot snapshot = worker.acquire();
+		final float alpha = Math.min(1.0f, (System.nanoTime() - snapshot.getTime())
+				/ (float) worker.getStepNanos());
+		updateFromSnapshot(snapshot, alpha);
+	}
 
-		// TODO refactor to use getX() and getZ()
-		if ((Timer.getTimer().getTimeInSeconds() - lastSnakeAction) > 0.05f) {
-			lastSnakeAction = Timer.getTimer().getTimeInSeconds();
-			// check which box should be pushed next
-			final double row = Math.ceil(currentSnake / xSize);
-			if ((row % 2) > 0) {
-				final int rowLeft = (currentSnake) % xSize;
-				final int boxPush = (int) Math.ceil(currentSnake / xSize) * xSize
-						+ (xSize - 1 - rowLeft);
-				boxes.get(boxPush).push(pushVelocity);
+	/**
+	 * Move the boxes of a snapshot. Boxes that came to rest are only moved once per snapshot, moving
+	 * boxes with every call.
+	 * 
+	 * @param snapshot
+	 * @param alpha
+	 *            interpolation between the heights before and after the step of the snapshot
+	 */
+	private void updateFromSnapshot(final HeightSnapshot snapshot, final float alpha) {
+		final int restedCount = snapshot.getSequence() != drawnSequence ? snapshot.getRestedCount() : 0;
+		drawnSequence = snapshot.getSequence();
+		for (int n = 0; n < restedCount; n++) {
+			final int i = snapshot.getRestedBox(n);
+			if (batchMesh != null) {
+				batchMesh.setHeight(i, snapshot.getRestedHeight(n));
+			} else {
+				moveBox(i, snapshot.getRestedHeight(n));
+			}
+		}
+		// resting boxes are on the floor, the height range follows from the moving boxes
+		float newMinHeight = 0.0f;
+		float newMaxHeight = 0.0f;
+		final int activeCount = snapshot.getActiveCount();
+		for (int n = 0; n < activeCount; n++) {
+			final int i = snapshot.getActiveBox(n);
+			final float height = snapshot.getInterpolatedHeight(n, alpha);
+			if (height < newMinHeight) {
+				newMinHeight = height;
+			} else if (height > newMaxHeight) {
+				newMaxHeight = height;
+			}
+			if (batchMesh != null) {
+				batchMesh.setHeight(i, height);
 			} else {
-				boxes.get(currentSnake).push(pushVelocity);
+				moveBox(i, height);
 			}
-			currentSnake = currentSnake + 1;
+		}
+		if (batchMesh == null) {
+			setHeightRange(newMinHeight, newMaxHeight);
+		} else if ((restedCount > 0) || (activeCount > 0)) {
+			batchMesh.updateHeightBound(newMinHeight, newMaxHeight);
 		}
 	}
 
 	/**
-	 * Create rings going over the array
+	 * Run an action on the grid, or queue it for the worker if the grid is simulated in its own thread.
+	 * Must be called from the render thread.
+	 * 
+	 * @param command
+	 * @return false if the command was dropped because the worker is too far behind
 	 */
-	private void ring() {
-		if (currentRing < 0) {
-			return;
+	public boolean execute(final GridCommand command) {
+		if (worker != null) {
+			return worker.submit(command);
 		}
+		command.execute(grid);
+		return true;
+	}
 
-		if ((Timer.getTimer().getTimeInSeconds() - lastRingAction) > 0.1f) {
-			lastRingAction = Timer.getTimer().getTimeInSeconds();
-
-			// check which boxes should be pushed
-			boolean[] pushedYet = new boolean[xSize * zSize];
-			for (int i = 0; i < boxes.size(); i++) {
-				// each ring has 4 walls
-				// 1. wall
-				if ((getX(i) == currentRing) && (getZ(i) >= currentRing)
-						&& (getZ(i) <= zSize - currentRing)) {
-					if (!pushedYet[i]) {
-						boxes.get(i).push(pushVelocity);
-						pushedYet[i] = true;
-					}
-				}
-				// 2. wall
-				if ((getX(i) == xSize - currentRing) && (getZ(i) >= currentRing)
-						&& (getZ(i) <= zSize - currentRing)) {
-					if (!pushedYet[i]) {
-						boxes.get(i).push(pushVelocity);
-						pushedYet[i] = true;
-					}
-				}
-				// 3. wall
-				if ((getZ(i) == currentRing) && (getX(i) >= currentRing)
-						&& (getX(i) <= xSize - currentRing)) {
-					if (!pushedYet[i]) {
-						boxes.get(i).push(pushVelocity);
-						pushedYet[i] = true;
-					}
-				}
-				// 4. wall
-				if ((getZ(i) == zSize - currentRing) && (getX(i) >= currentRing)
-						&& (getX(i) <= xSize - currentRing)) {
-					if (!pushedYet[i]) {
-						boxes.get(i).push(pushVelocity);
-						pushedYet[i] = true;
-					}
-				}
-			}
+	/**
+	 * @return how the boxes are put into the scene graph
+	 */
+	public RenderMode getRenderMode() {
+		return renderMode;
+	}
 
-			// next ring
-			if (currentRing == 0) {
-				currentRing = Math.min(xSize, zSize) / 2;
-			} else {
-				currentRing = currentRing - 1;
+	/**
+	 * Count the meshes drawn for the array if it is completely in view, i.e. the draw calls of the
+	 * array: all geometries of the scene graph below the array that are not hidden by their cull hint.
+	 * Walks the whole scene graph of the array, so it is not meant to be called every frame.
+	 * 
+	 * @return number of meshes drawn for the array
+	 */
+	public int getBatchCount() {
+		return countDrawn(this);
+	}
+
+	/**
+	 * @param spatial
+	 * @return number of geometries drawn for the spatial and its children
+	 */
+	private static int countDrawn(final Spatial spatial) {
+		if (spatial.getLocalCullHint() == CullHint.Always) {
+			return 0;
+		}
+		if (spatial instanceof Geometry) {
+			return 1;
+		}
+		int count = 0;
+		if (spatial instanceof Node) {
+			final Node node = (Node) spatial;
+			for (int i = 0; i < node.getQuantity(); i++) {
+				count += countDrawn(node.getChild(i));
 			}
 		}
+		return count;
 	}
 
 	/**
-	 * stop all actions immediately
+	 * Set the shadow casting lights. Boxes near these lights always cast shadows, all others only
+	 * while they are off the floor. Does nothing for the batched mesh.
+	 * 
+	 * @param lights
+	 *            positions of the lights in the coordinate system of the array
+	 * @param distance
+	 *            boxes closer to a light cast shadows even when resting
 	 */
-	private void resetActions() {
-		currentSnake = -1;
-		currentWave = -1;
-		currentRing = -1;
+	public void setShadowLights(final Vector3f[] lights, final float distance) {
+		if (tiles == null) {
+			return;
+		}
+		for (int i = 0; i < tiles.length; i++) {
+			tiles[i].setShadowLights(lights, distance);
+		}
+	}
+
+	/**
+	 * @return number of box nodes casting shadows, 0 for the batched mesh
+	 */
+	public int getOccluderCount() {
+		if (tiles == null) {
+			return 0;
+		}
+		int count = 0;
+		for (int i = 0; i < tiles.length; i++) {
+			count += tiles[i].getOccluderCount();
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.OccluderSource#getOccluderVersion()
+	 */
+	public long getOccluderVersion() {
+		if (tiles == null) {
+			// the batched mesh always casts shadows
+			return 0;
+		}
+		// the versions of the tiles only grow, so the sum changes with any of them
+		long version = 0;
+		for (int i = 0; i < tiles.length; i++) {
+			version += tiles[i].getOccluderVersion();
+		}
+		return version;
+	}
+
+	/**
+	 * @return distance from the camera at which tiles switch to the heightfield (LOD mode)
+	 */
+	public float getLodDistance() {
+		return lodDistance;
+	}
+
+	/**
+	 * @param lodDistance
+	 *            distance from the camera at which tiles switch to the heightfield (LOD mode)
+	 */
+	public void setLodDistance(final float lodDistance) {
+		this.lodDistance = lodDistance;
+	}
+
+	/**
+	 * @return number of tiles, 0 for the batched mesh
+	 */
+	public int getTileCount() {
+		return tiles != null ? tiles.length : 0;
+	}
+
+	/**
+	 * Push whole array into the air
+	 */
+	public void pushAll() {
+		execute(GridAction.PUSH_ALL);
+	}
+
+	/**
+	 * Enable/Disable floor
+	 */
+	public void switchFloor() {
+		execute(GridAction.SWITCH_FLOOR);
+	}
+
+	/**
+	 * Push a random box into the air
+	 */
+	public void pushRand() {
+		execute(GridAction.PUSH_RAND);
 	}
 
 	/**
 	 * start/stop the snake going through the array
 	 */
 	public void switchSnake() {
-		if (currentSnake >= 0) {
-			currentSnake = -1;
-			return;
-		}
-		currentSnake = 0;
+		execute(GridAction.SWITCH_SNAKE);
 	}
 
 	/**
 	 * Start/stop waves going over the array
 	 */
 	public void switchWave() {
-		if (currentWave >= 0) {
-			currentWave = -1;
-			return;
-		}
-		currentWave = 0;
+		execute(GridAction.SWITCH_WAVE);
 	}
 
 	/**
 	 * Start/stop rings going over the array
 	 */
 	public void switchRings() {
-		if (currentRing >= 0) {
-			currentRing = -1;
-			return;
-		}
-		currentRing = Math.min(xSize, zSize) / 2;
+		execute(GridAction.SWITCH_RINGS);
 	}
 
 	/**
 	 * Hold/release all boxes at their postion
 	 */
 	public void switchHold() {
-		hold = !hold;
+		execute(GridAction.SWITCH_HOLD);
 	}
 
 	/**
 	 * Stop all actions immediately
 	 */
 	public void stopAll() {
-		resetActions();
+		execute(GridAction.STOP_ALL);
 	}
 
 	/**
 	 * Change the push velocity
 	 */
 	public void changeVelocity() {
-		if (pushVelocity >= 120) {
-			pushVelocity = -20;
-		} else {
-			pushVelocity += 10;
-		}
+		execute(GridAction.CHANGE_VELOCITY);
 	}
 
 	/**
-	 * Transform a list position into position in a 2D-array
-	 * 
-	 * @param i
-	 *            list position
-	 * @return x array x-coordinate
-	 */
-	private int getX(final int i) {
-		return (i % xSize);
-	}
-
-	/**
-	 * Transform a list position into position in a 2D-array
-	 * 
-	 * @param i
-	 *            list position
-	 * @return y array y-coordinate
+	 * @return simulation of all boxes, must not be changed while the worker is running
 	 */
-	private int getZ(final int i) {
-		return (int) Math.ceil(i / xSize);
+	public CoolGrid getGrid() {
+		return grid;
 	}
 
 }
@@ -7,15 +7,16 @@ import com.jme.bounding.BoundingBox;
 import com.jme.math.Vector3f;
 import com.jme.renderer.ColorRGBA;
 import com.jme.renderer.Renderer;
+import com.jme.scene.Geometry;
 import com.jme.scene.Node;
 import com.jme.scene.SharedNode;
+import com.jme.scene.Spatial;
 import com.jme.scene.shape.Box;
 import com.jme.scene.state.MaterialState;
-import com.jme.system.DisplaySystem;
-import com.jme.util.Timer;
 
 /**
- * A physical box that can be pushed into the air
+ * A box of the cool array. The physics of the box is calculated by {@link BoxPhysics}, the box only
+ * follows the calculated height
  * 
  * @author mq
  */
@@ -26,9 +27,10 @@ public class CoolBox extends Node {
 
 	private static final long serialVersionUID = -7003865797724738726L;
 
-	private float velocity = 0.0f;
-	private final float gravity = 37.8f;
-	private final float friction = 2.0f;
+	// size of a box and distance between two boxes
+	static final float WIDTH = 5.0f;
+	static final float HEIGHT = 10.0f;
+	static final float SPACING = 5.5f;
 
 	/**
 	 * Construtor
@@ -38,7 +40,7 @@ public class CoolBox extends Node {
 	public CoolBox(final int xPos, final int zPos) {
 		// create a copy of shared mesh and set correct position
 		final SharedNode box = new SharedNode(getBox());
-		box.setLocalTranslation(new Vector3f(5.5f * (xPos - 1), 0, 5.5f * (zPos - 1)));
+		box.setLocalTranslation(new Vector3f(SPACING * (xPos - 1), 0, SPACING * (zPos - 1)));
 
 		// attach box to scene node(=this) and make it opaque
 		attachChild(box);
@@ -57,7 +59,7 @@ public class CoolBox extends Node {
 
 		// create size vectors for box (size: 5x10x5)
 		final Vector3f min = new Vector3f(0, 0, 0);
-		final Vector3f max = new Vector3f(5, 10, 5);
+		final Vector3f max = new Vector3f(WIDTH, HEIGHT, WIDTH);
 
 		// create box
 		final Box boxMesh = new Box("sharedbox", min, max);
@@ -65,11 +67,7 @@ public class CoolBox extends Node {
 		boxMesh.updateModelBound();
 		boxMesh.setSolidColor(ColorRGBA.black); // this has no effect?
 
-		// assign material
-		final MaterialState materialState = DisplaySystem.getDisplaySystem().getRenderer().createMaterialState();
-		materialState.setEmissive(new ColorRGBA(0.05f, 0.05f, 0.05f, 0.5f));
-		materialState.setShininess(100);
-		setRenderState(materialState);
+		// the material is inherited from the array, see CoolArray#createRenderStates
 
 		// assign mesh to the shared node
 		final Node node = new Node("sharednode");
@@ -80,95 +78,83 @@ public class CoolBox extends Node {
 	}
 
 	/**
-	 * update all properties like position for the box each frame
+	 * Create the material of the boxes, also used for meshes showing several boxes at once
+	 * 
+	 * @param renderer
+	 *            creates the state, must be called from the render thread
+	 * @return new material state
 	 */
-	public void update(final boolean floorEnabled) {
-		calcNewPos(Timer.getTimer().getTimePerFrame(), floorEnabled);
+	static MaterialState createMaterialState(final Renderer renderer) {
+		final MaterialState materialState = renderer.createMaterialState();
+		materialState.setEmissive(new ColorRGBA(0.05f, 0.05f, 0.05f, 0.5f));
+		materialState.setShininess(100);
+		return materialState;
 	}
 
 	/**
-	 * calculate new position, velocity ...
+	 * Add the box to or remove it from the shadow occluders (see
+	 * {@link com.jme.scene.Geometry#setCastsShadows(boolean)})
 	 * 
-	 * @param interpolation
-	 *            frame averaging
-	 * @param floorEnabled
+	 * @param castsShadows
 	 */
-	private void calcNewPos(final float interpolation, final boolean floorEnabled) {
-		// we are only using Y-Translation (up and down)
-		final float currentPos = getLocalTranslation().y;
-		// return if box is not moving
-		if ((Math.abs(velocity) == 0.0f) && (currentPos == 0.0f)) {
-			return;
-		}
+	void setCastsShadows(final boolean castsShadows) {
+		setCastsShadows(this, castsShadows);
+	}
 
-		// floor
-		if (floorEnabled) {
-			// stop box from passing the floor (top-down or bottom-up).
-			// The "2-multiplier" is just for safety reasons. Without it boxes will sometimes pass the floor :-/
-			if (((currentPos + (velocity * interpolation * 2) <= 0.0f) && (currentPos > 0.0f))
-					|| ((currentPos + (velocity * interpolation * 2) >= 0.0f) && (currentPos < 0.0f))) {
-				velocity = 0;
-				setToPos(0.0f);
-				return;
-			}
-		} else {
-			// stop the box if it is not really moving anymore (snap into the floor)
-			if ((Math.abs(velocity) < 0.2f) && (Math.abs(currentPos) < 0.3f)) {
-				velocity = 0;
-				setToPos(0.0f);
-				return;
+	/**
+	 * @param spatial
+	 *            a box node or one of its children
+	 * @param castsShadows
+	 */
+	private static void setCastsShadows(final Spatial spatial, final boolean castsShadows) {
+		if (spatial instanceof Geometry) {
+			((Geometry) spatial).setCastsShadows(castsShadows);
+		} else if (spatial instanceof Node) {
+			final Node node = (Node) spatial;
+			for (int i = 0; i < node.getQuantity(); i++) {
+				setCastsShadows(node.getChild(i), castsShadows);
 			}
 		}
-
-		// ceiling (bounce-back)
-		if (currentPos > 1000f) {
-			velocity = -velocity;
-		}
-
-		// gravity
-		if (currentPos > 0) {
-			velocity -= gravity * interpolation;
-		} else {
-			velocity += gravity * interpolation;
-		}
-
-		// friction
-		if (velocity > 0) {
-			velocity -= friction * interpolation;
-		} else {
-			velocity += friction * interpolation;
-		}
-
-		// new location
-		final float newPos = currentPos + (velocity * interpolation);
-		setToPos(newPos);
 	}
 
 	/**
-	 * Translate node according to new Y-Position
+	 * Translate node according to new Y-Position. The translation is changed in place (no new objects
+	 * each frame), world data is updated with the next updateGeometricState.
 	 * 
 	 * @param newPos
 	 */
-	private void setToPos(final float newPos) {
-		final Vector3f newTrans = getLocalTranslation();
-		newTrans.y = newPos;
-		setLocalTranslation(newTrans);
-	}
-
-	/**
-	 * Push box into the air with fixed force
-	 */
-	public void push() {
-		velocity += 35.0f;
+	void setToPos(final float newPos) {
+		localTranslation.y = newPos;
 	}
 
 	/**
-	 * Push box into the air with custom force
+	 * Set a bound around a rectangular part of a grid of boxes
 	 * 
-	 * @param force
+	 * @param bound
+	 *            receives the bound
+	 * @param xStart
+	 *            first box in x-direction
+	 * @param zStart
+	 *            first box in z-direction
+	 * @param xCount
+	 *            number of boxes in x-direction
+	 * @param zCount
+	 *            number of boxes in z-direction
+	 * @param minHeight
+	 *            lowest y-translation of the boxes
+	 * @param maxHeight
+	 *            highest y-translation of the boxes
 	 */
-	public void push(final float force) {
-		velocity += force;
+	static void setGridBound(final BoundingBox bound, final int xStart, final int zStart, final int xCount,
+			final int zCount, final float minHeight, final float maxHeight) {
+		final float xMin = SPACING * (xStart - 1);
+		final float xMax = SPACING * (xStart + xCount - 2) + WIDTH;
+		final float zMin = SPACING * (zStart - 1);
+		final float zMax = SPACING * (zStart + zCount - 2) + WIDTH;
+		bound.getCenter().set((xMin + xMax) / 2, (minHeight + maxHeight + HEIGHT) / 2, (zMin + zMax) / 2);
+		bound.xExtent = (xMax - xMin) / 2;
+		bound.yExtent = (maxHeight + HEIGHT - minHeight) / 2;
+		bound.zExtent = (zMax - zMin) / 2;
 	}
 
 }
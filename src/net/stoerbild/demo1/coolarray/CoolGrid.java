@@ -0,0 +1,250 @@
+package net.stoerbild.demo1.coolarray;
+
+import net.stoerbild.demo1.helper.Clock;
+
+/**
+ * Simulation of an array of boxes: physics, running actions (snake, wave, rings or any other
+ * {@link Pattern}) and all user-triggered actions. Does not depend on the display system, so it can
+ * run headless. The scene representation is done by {@link CoolArray}.
+ * 
+ * @author mq
+ */
+public class CoolGrid {
+
+	// hold all boxes at their position
+	private boolean hold;
+
+	private float pushVelocity;
+	private boolean floorEnabled;
+
+	// heights and velocities of all boxes
+	private final BoxPhysics physics;
+
+	// time source for physics and actions
+	private final Clock clock;
+
+	// runs all actions
+	private final PatternScheduler scheduler;
+	// boxes pushed by the actions during a frame
+	private final PushBatch pushBatch;
+
+	// the built-in actions
+	private final Pattern snake;
+	private final Pattern wave;
+	private final Pattern rings;
+
+	// size of the grid
+	private final int xSize;
+	private final int zSize;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param xSize
+	 * @param zSize
+	 * @param clock
+	 *            time source for physics and actions
+	 */
+	public CoolGrid(final int xSize, final int zSize, final Clock clock) {
+		assert clock != null : "clock is not initialized";
+		this.xSize = xSize;
+		this.zSize = zSize;
+		this.clock = clock;
+		physics = new BoxPhysics(xSize * zSize);
+		scheduler = new PatternScheduler(clock);
+		pushBatch = new PushBatch(xSize * zSize);
+		snake = new TablePattern(PatternTable.snake(xSize, zSize), 0.05f);
+		wave = new TablePattern(PatternTable.wave(xSize, zSize), 0.10f);
+		rings = new TablePattern(PatternTable.rings(xSize, zSize), 0.1f);
+
+		pushVelocity = 35.0f;
+		floorEnabled = true;
+		hold = false;
+	}
+
+	/**
+	 * Update the complete grid (running actions and position of all boxes)
+	 */
+	public void update() {
+		if (hold) {
+			physics.resetInterpolation();
+			return;
+		}
+		updateActions();
+		// calculate new positions
+		physics.step(clock.getTimePerFrame(), floorEnabled);
+	}
+
+	/**
+	 * Step all running array actions without moving the boxes. The boxes of all actions are pushed in
+	 * a single pass.
+	 */
+	public void updateActions() {
+		scheduler.update(pushBatch);
+		if (pushBatch.getCount() > 0) {
+			physics.push(pushBatch.getBoxes(), 0, pushBatch.getCount(), pushVelocity);
+			pushBatch.clear();
+		}
+	}
+
+	/**
+	 * Push whole array into the air
+	 */
+	public void pushAll() {
+		if (hold) {
+			return;
+		}
+		physics.pushAll(pushVelocity);
+	}
+
+	/**
+	 * Enable/Disable floor
+	 */
+	public void switchFloor() {
+		floorEnabled = !floorEnabled;
+	}
+
+	/**
+	 * Push a random box into the air
+	 */
+	public void pushRand() {
+		if (hold) {
+			return;
+		}
+		final double rand = Math.random();
+		final int n = (int) Math.round(rand * (physics.getSize() - 1));
+		physics.push(n, pushVelocity);
+	}
+
+	/**
+	 * Push a single box, boxes outside of the grid are ignored
+	 * 
+	 * @param x
+	 *            column of the box
+	 * @param z
+	 *            row of the box
+	 */
+	public void push(final int x, final int z) {
+		if (hold || (x < 0) || (x >= xSize) || (z < 0) || (z >= zSize)) {
+			return;
+		}
+		physics.push(z * xSize + x, pushVelocity);
+	}
+
+	/**
+	 * start/stop the snake going through the array
+	 */
+	public void switchSnake() {
+		scheduler.toggle(snake);
+	}
+
+	/**
+	 * Start/stop waves going over the array
+	 */
+	public void switchWave() {
+		scheduler.toggle(wave);
+	}
+
+	/**
+	 * Start/stop rings going over the array
+	 */
+	public void switchRings() {
+		scheduler.toggle(rings);
+	}
+
+	/**
+	 * Hold/release all boxes at their postion
+	 */
+	public void switchHold() {
+		hold = !hold;
+	}
+
+	/**
+	 * Stop all actions immediately
+	 */
+	public void stopAll() {
+		scheduler.stopAll();
+	}
+
+	/**
+	 * Change the push velocity
+	 */
+	public void changeVelocity() {
+		if (pushVelocity >= 120) {
+			pushVelocity = -20;
+		} else {
+			pushVelocity += 10;
+		}
+	}
+
+	/**
+	 * @return true if the snake is running
+	 */
+	public boolean isSnakeRunning() {
+		return scheduler.isRunning(snake);
+	}
+
+	/**
+	 * @return true if the waves are running
+	 */
+	public boolean isWaveRunning() {
+		return scheduler.isRunning(wave);
+	}
+
+	/**
+	 * @return true if the rings are running
+	 */
+	public boolean isRingsRunning() {
+		return scheduler.isRunning(rings);
+	}
+
+	/**
+	 * @return true if all boxes are held at their position
+	 */
+	public boolean isHold() {
+		return hold;
+	}
+
+	/**
+	 * @return true if the floor is enabled
+	 */
+	public boolean isFloorEnabled() {
+		return floorEnabled;
+	}
+
+	/**
+	 * @return current push velocity
+	 */
+	public float getPushVelocity() {
+		return pushVelocity;
+	}
+
+	/**
+	 * @return heights and velocities of all boxes
+	 */
+	public BoxPhysics getPhysics() {
+		return physics;
+	}
+
+	/**
+	 * @return scheduler running all actions, further patterns can be started here
+	 */
+	public PatternScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * @return size of the grid in x-direction
+	 */
+	public int getXSize() {
+		return xSize;
+	}
+
+	/**
+	 * @return size of the grid in z-direction
+	 */
+	public int getZSize() {
+		return zSize;
+	}
+
+}
@@ -0,0 +1,351 @@
+package net.stoerbild.demo1.coolarray;
+
+import java.util.Arrays;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.math.Vector3f;
+import com.jme.scene.Node;
+
+/**
+ * A rectangular part of a {@link CoolArray} (e.g. 16x16 boxes). Each tile has its own bound, so tiles
+ * outside the view are culled as a whole. Only boxes moved since the last frame get their world data
+ * updated, and the bound is only recalculated if a box of the tile moved.
+ * <p>
+ * Seen from far away a tile can switch to a {@link TileHeightfield} (see {@link #setFar(boolean)}):
+ * the box nodes are hidden and removed from the shadow occluders, only the tops of the boxes are
+ * drawn as a single mesh.
+ * <p>
+ * Only boxes that can cast a visible shadow are shadow occluders: boxes above or below the floor and
+ * boxes near a shadow casting light. Resting boxes on the flat floor only shadow each other. The
+ * occluders are updated box by box as boxes start and stop moving.
+ * 
+ * @author mq
+ */
+public class CoolTile extends Node {
+
+	private static final long serialVersionUID = 2914795376532001542L;
+
+	// position and size of the tile in the grid
+	private final int xStart;
+	private final int zStart;
+	private final int xCount;
+	private final int zCount;
+
+	// boxes of the tile, row by row
+	private final CoolBox[] boxes;
+
+	// boxes moved since the last updateWorldData
+	private final int[] movedBoxes;
+	private final boolean[] moved;
+	private int movedCount = 0;
+	// all boxes need an update (first frame, array moved or detail switched)
+	private boolean fullUpdate = true;
+	// tile is waiting for the next updateWorldData
+	private boolean queued = false;
+
+	// low detail mesh, created with the first switch to far
+	private TileHeightfield heightfield = null;
+	private boolean far = false;
+
+	// boxes currently casting shadows, and boxes always casting shadows because a light is near
+	private final boolean[] occluder;
+	private final boolean[] nearLight;
+	private int occluderCount;
+	// changes whenever a box starts or stops casting shadows
+	private int occluderVersion = 0;
+
+	private boolean boundChanged = true;
+	private final BoundingBox localBound = new BoundingBox();
+
+	/**
+	 * Constructor, creates all boxes of the tile
+	 * 
+	 * @param name
+	 * @param xStart
+	 *            first box in x-direction
+	 * @param zStart
+	 *            first box in z-direction
+	 * @param xCount
+	 *            number of boxes in x-direction
+	 * @param zCount
+	 *            number of boxes in z-direction
+	 */
+	CoolTile(final String name, final int xStart, final int zStart, final int xCount, final int zCount) {
+		super(name);
+		this.xStart = xStart;
+		this.zStart = zStart;
+		this.xCount = xCount;
+		this.zCount = zCount;
+		boxes = new CoolBox[xCount * zCount];
+		movedBoxes = new int[boxes.length];
+		moved = new boolean[boxes.length];
+		occluder = new boolean[boxes.length];
+		nearLight = new boolean[boxes.length];
+		for (int j = 0; j < zCount; j++) {
+			for (int i = 0; i < xCount; i++) {
+				final CoolBox box = new CoolBox(xStart + i, zStart + j);
+				attachChild(box);
+				boxes[j * xCount + i] = box;
+			}
+		}
+		// new meshes cast shadows, all boxes are on the floor
+		Arrays.fill(occluder, true);
+		occluderCount = boxes.length;
+		updateOccluders();
+	}
+
+	/**
+	 * Move a box and remember it for the next world data update
+	 * 
+	 * @param x
+	 *            position of the box in the tile
+	 * @param z
+	 *            position of the box in the tile
+	 * @param height
+	 *            new y-translation of the box
+	 * @return true if the tile has to be queued for the next update
+	 */
+	boolean moveBox(final int x, final int z, final float height) {
+		final int i = z * xCount + x;
+		final CoolBox box = boxes[i];
+		if (box.getLocalTranslation().y == height) {
+			// e.g. held boxes
+			return false;
+		}
+		box.setToPos(height);
+		updateOccluder(i);
+		if (far) {
+			heightfield.setHeight(i, height);
+		}
+		if (moved[i]) {
+			return false;
+		}
+		moved[i] = true;
+		movedBoxes[movedCount++] = i;
+		return queue();
+	}
+
+	/**
+	 * Switch between the box nodes (near) and the heightfield (far)
+	 * 
+	 * @param far
+	 *            true to show the heightfield
+	 * @return true if the tile has to be queued for the next update
+	 */
+	boolean setFar(final boolean far) {
+		if (far == this.far) {
+			return false;
+		}
+		this.far = far;
+		if (far) {
+			if (heightfield == null) {
+				heightfield = new TileHeightfield(getName() + "-far", xStart, zStart, xCount, zCount);
+				attachChild(heightfield);
+				// material of the array
+				heightfield.updateRenderState();
+			}
+			// the heightfield is not moved while the tile is near
+			for (int i = 0; i < boxes.length; i++) {
+				heightfield.setHeight(i, boxes[i].getLocalTranslation().y);
+			}
+			heightfield.setCullHint(CullHint.Inherit);
+		} else {
+			heightfield.setCullHint(CullHint.Always);
+		}
+		for (int i = 0; i < boxes.length; i++) {
+			boxes[i].setCullHint(far ? CullHint.Always : CullHint.Inherit);
+		}
+		updateOccluders();
+		// boxes are not updated while the tile is far
+		requestFullUpdate();
+		return queue();
+	}
+
+	/**
+	 * Mark the boxes near the shadow casting lights, they always cast shadows
+	 * 
+	 * @param lights
+	 *            positions of the lights in the coordinate system of the array
+	 * @param distance
+	 *            boxes closer to a light cast shadows even when resting
+	 */
+	void setShadowLights(final Vector3f[] lights, final float distance) {
+		final float distanceSquared = distance * distance;
+		for (int j = 0; j < zCount; j++) {
+			for (int i = 0; i < xCount; i++) {
+				// center of the box on the floor
+				final float x = CoolBox.SPACING * (xStart + i - 1) + CoolBox.WIDTH / 2;
+				final float y = CoolBox.HEIGHT / 2;
+				final float z = CoolBox.SPACING * (zStart + j - 1) + CoolBox.WIDTH / 2;
+				boolean near = false;
+				for (final Vector3f light : lights) {
+					final float dx = light.x - x;
+					final float dy = light.y - y;
+					final float dz = light.z - z;
+					near |= dx * dx + dy * dy + dz * dz < distanceSquared;
+				}
+				nearLight[j * xCount + i] = near;
+			}
+		}
+		updateOccluders();
+	}
+
+	/**
+	 * Check for all boxes if they have to cast shadows
+	 */
+	private void updateOccluders() {
+		for (int i = 0; i < boxes.length; i++) {
+			updateOccluder(i);
+		}
+	}
+
+	/**
+	 * Add a box to or remove it from the shadow occluders if its state changed. Boxes of far tiles
+	 * never cast shadows.
+	 * 
+	 * @param i
+	 *            index of the box
+	 */
+	private void updateOccluder(final int i) {
+		final boolean castsShadows = !far && (nearLight[i] || (boxes[i].getLocalTranslation().y != 0.0f));
+		if (castsShadows == occluder[i]) {
+			return;
+		}
+		occluder[i] = castsShadows;
+		occluderCount += castsShadows ? 1 : -1;
+		occluderVersion++;
+		boxes[i].setCastsShadows(castsShadows);
+	}
+
+	/**
+	 * @return true if the tile was not queued for the next update yet
+	 */
+	private boolean queue() {
+		if (queued) {
+			return false;
+		}
+		queued = true;
+		return true;
+	}
+
+	/**
+	 * Update the world data of all boxes with the next update, not only the moved ones
+	 */
+	void requestFullUpdate() {
+		fullUpdate = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.scene.Node#updateWorldData(float)
+	 */
+	@Override
+	public void updateWorldData(final float time) {
+		updateWorldVectors();
+		if (far) {
+			// only the heightfield is visible, its bound follows the bound of the tile
+			if (fullUpdate) {
+				heightfield.updateWorldVectors();
+				fullUpdate = false;
+				boundChanged = true;
+			} else {
+				boundChanged |= movedCount > 0;
+			}
+		} else if (fullUpdate) {
+			for (int i = 0; i < boxes.length; i++) {
+				boxes[i].updateGeometricState(time, false);
+			}
+			fullUpdate = false;
+			boundChanged = true;
+		} else {
+			for (int n = 0; n < movedCount; n++) {
+				boxes[movedBoxes[n]].updateGeometricState(time, false);
+			}
+			boundChanged |= movedCount > 0;
+		}
+		for (int n = 0; n < movedCount; n++) {
+			moved[movedBoxes[n]] = false;
+		}
+		movedCount = 0;
+		queued = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.scene.Node#updateWorldBound()
+	 */
+	@Override
+	public void updateWorldBound() {
+		if (!boundChanged && (worldBound != null)) {
+			return;
+		}
+		float minHeight = 0.0f;
+		float maxHeight = 0.0f;
+		for (int i = 0; i < boxes.length; i++) {
+			final float height = boxes[i].getLocalTranslation().y;
+			if (height < minHeight) {
+				minHeight = height;
+			} else if (height > maxHeight) {
+				maxHeight = height;
+			}
+		}
+		CoolBox.setGridBound(localBound, xStart, zStart, xCount, zCount, minHeight, maxHeight);
+		worldBound = localBound.transform(worldRotation, worldTranslation, worldScale, worldBound);
+		if (far) {
+			heightfield.updateHeightBound(minHeight, maxHeight);
+		}
+		boundChanged = false;
+	}
+
+	/**
+	 * @return number of boxes casting shadows
+	 */
+	public int getOccluderCount() {
+		return occluderCount;
+	}
+
+	/**
+	 * @return number of changes of the boxes casting shadows
+	 */
+	public int getOccluderVersion() {
+		return occluderVersion;
+	}
+
+	/**
+	 * @return true if the heightfield is shown instead of the boxes
+	 */
+	public boolean isFar() {
+		return far;
+	}
+
+	/**
+	 * @return first box in x-direction
+	 */
+	public int getXStart() {
+		return xStart;
+	}
+
+	/**
+	 * @return first box in z-direction
+	 */
+	public int getZStart() {
+		return zStart;
+	}
+
+	/**
+	 * @return number of boxes in x-direction
+	 */
+	public int getXCount() {
+		return xCount;
+	}
+
+	/**
+	 * @return number of boxes in z-direction
+	 */
+	public int getZCount() {
+		return zCount;
+	}
+
+}
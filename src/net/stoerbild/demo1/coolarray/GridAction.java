@@ -0,0 +1,75 @@
+package net.stoerbild.demo1.coolarray;
+
+/**
+ * All actions of the array as commands, so the same constants can be queued again and again without
+ * creating new objects
+ * 
+ * @author mq
+ */
+public enum GridAction implements GridCommand {
+
+	/** push all boxes */
+	PUSH_ALL {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.pushAll();
+		}
+	},
+	/** push a random box */
+	PUSH_RAND {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.pushRand();
+		}
+	},
+	/** enable/disable the floor */
+	SWITCH_FLOOR {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.switchFloor();
+		}
+	},
+	/** start/stop the snake */
+	SWITCH_SNAKE {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.switchSnake();
+		}
+	},
+	/** start/stop the waves */
+	SWITCH_WAVE {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.switchWave();
+		}
+	},
+	/** start/stop the rings */
+	SWITCH_RINGS {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.switchRings();
+		}
+	},
+	/** hold/release all boxes */
+	SWITCH_HOLD {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.switchHold();
+		}
+	},
+	/** stop all actions */
+	STOP_ALL {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.stopAll();
+		}
+	},
+	/** change the push velocity */
+	CHANGE_VELOCITY {
+		@Override
+		public void execute(final CoolGrid grid) {
+			grid.changeVelocity();
+		}
+	}
+
+}
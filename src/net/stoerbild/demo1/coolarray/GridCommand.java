@@ -0,0 +1,18 @@
+package net.stoerbild.demo1.coolarray;
+
+/**
+ * An action on a {@link CoolGrid}. Commands are queued while the grid is simulated by a
+ * {@link PhysicsWorker} and executed by the worker before its next step.
+ * 
+ * @author mq
+ */
+public interface GridCommand {
+
+	/**
+	 * Execute the command
+	 * 
+	 * @param grid
+	 */
+	public void execute(CoolGrid grid);
+
+}
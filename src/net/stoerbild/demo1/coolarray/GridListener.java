@@ -0,0 +1,20 @@
+package net.stoerbild.demo1.coolarray;
+
+/**
+ * Called by a {@link PhysicsWorker} after each simulation step, in the worker thread
+ * 
+ * @author mq
+ */
+public interface GridListener {
+
+	/**
+	 * A simulation step is done
+	 * 
+	 * @param grid
+	 *            the simulated grid, may be read but not changed
+	 * @param stepNanos
+	 *            duration of the step in nanoseconds
+	 */
+	public void stepped(CoolGrid grid, long stepNanos);
+
+}
@@ -0,0 +1,143 @@
+package net.stoerbild.demo1.coolarray;
+
+/**
+ * The boxes changed by a simulation step, handed from the {@link PhysicsWorker} to the render
+ * thread. Contains the moving boxes with their heights before and after the step, so the render
+ * thread can interpolate between them, and the boxes that came to rest since the last snapshot taken
+ * by the render thread. All other boxes did not move, so a snapshot costs as much as the moving boxes
+ * and not as the whole grid.
+ * 
+ * @author mq
+ */
+public final class HeightSnapshot {
+
+	// moving boxes: index, height before and after the step
+	private final int[] active;
+	private final float[] heights;
+	private final float[] previousHeights;
+	private int activeCount = 0;
+
+	// boxes that came to rest and their final height
+	private final int[] rested;
+	private final float[] restedHeights;
+	private int restedCount = 0;
+
+	// System.nanoTime of the step
+	private long time = 0;
+	// number of the step, 0 for the initial (empty) snapshot
+	private volatile long sequence = 0;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param size
+	 *            number of boxes
+	 */
+	HeightSnapshot(final int size) {
+		active = new int[size];
+		heights = new float[size];
+		previousHeights = new float[size];
+		rested = new int[size];
+		restedHeights = new float[size];
+	}
+
+	/**
+	 * Copy the moving and the rested boxes of the physics
+	 * 
+	 * @param physics
+	 * @param stepTime
+	 *            System.nanoTime of the step
+	 * @param stepSequence
+	 *            number of the step
+	 */
+	void copyFrom(final BoxPhysics physics, final long stepTime, final long stepSequence) {
+		final float[] currentHeights = physics.getHeights();
+		final float[] lastHeights = physics.getPreviousHeights();
+		final int[] physicsActive = physics.getActive();
+		activeCount = physics.getActiveCount();
+		for (int n = 0; n < activeCount; n++) {
+			final int i = physicsActive[n];
+			active[n] = i;
+			heights[n] = currentHeights[i];
+			previousHeights[n] = lastHeights[i];
+		}
+		final int[] physicsRested = physics.getRested();
+		restedCount = physics.getRestedCount();
+		for (int n = 0; n < restedCount; n++) {
+			final int i = physicsRested[n];
+			rested[n] = i;
+			restedHeights[n] = currentHeights[i];
+		}
+		time = stepTime;
+		sequence = stepSequence;
+	}
+
+	/**
+	 * @return number of moving boxes after the step
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * @param n
+	 *            position in the moving boxes (0 to {@link #getActiveCount()})
+	 * @return index of the box
+	 */
+	public int getActiveBox(final int n) {
+		return active[n];
+	}
+
+	/**
+	 * @param n
+	 *            position in the moving boxes (0 to {@link #getActiveCount()})
+	 * @param alpha
+	 *            0 (before the step) to 1 (after the step)
+	 * @return interpolated height of the box
+	 */
+	public float getInterpolatedHeight(final int n, final float alpha) {
+		final float previous = previousHeights[n];
+		return previous + (heights[n] - previous) * alpha;
+	}
+
+	/**
+	 * @return number of boxes that came to rest. A box may come to rest and be pushed again, then it
+	 *         is a moving box as well and has to be drawn at its moving height.
+	 */
+	public int getRestedCount() {
+		return restedCount;
+	}
+
+	/**
+	 * @param n
+	 *            position in the rested boxes (0 to {@link #getRestedCount()})
+	 * @return index of the box
+	 */
+	public int getRestedBox(final int n) {
+		return rested[n];
+	}
+
+	/**
+	 * @param n
+	 *            position in the rested boxes (0 to {@link #getRestedCount()})
+	 * @return height of the box after the step
+	 */
+	public float getRestedHeight(final int n) {
+		return restedHeights[n];
+	}
+
+	/**
+	 * @return System.nanoTime of the step
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return number of the step
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+}
@@ -0,0 +1,32 @@
+package net.stoerbild.demo1.coolarray;
+
+/**
+ * An action going over the array (snake, wave, rings ...). A pattern is a fixed schedule of steps and
+ * selects the boxes to push for each step. Patterns are run by the {@link PatternScheduler}, which
+ * repeats them until they are stopped.
+ * 
+ * @author mq
+ */
+public interface Pattern {
+
+	/**
+	 * @return time between two steps in seconds
+	 */
+	public float getStepInterval();
+
+	/**
+	 * @return number of steps of one run
+	 */
+	public int getStepCount();
+
+	/**
+	 * Select all boxes to push for a step
+	 * 
+	 * @param step
+	 *            0 to {@link #getStepCount()} - 1
+	 * @param batch
+	 *            receives the indices of the boxes to push
+	 */
+	public void selectBoxes(int step, PushBatch batch);
+
+}
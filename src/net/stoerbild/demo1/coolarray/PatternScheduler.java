@@ -0,0 +1,183 @@
+package net.stoerbild.demo1.coolarray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import net.stoerbild.demo1.helper.Clock;
+
+/**
+ * Runs any number of patterns at the same time. The clock is checked once per frame; patterns are
+ * only asked for boxes when one of their steps is due. All boxes of a frame are collected in one
+ * {@link PushBatch}.
+ * 
+ * @author mq
+ */
+public class PatternScheduler {
+
+	private final Clock clock;
+
+	// all running patterns
+	private final ArrayList<Run> runs = new ArrayList<Run>();
+
+	// time of the last step of stopped patterns, a pattern started again keeps its timing
+	private final HashMap<Pattern, Float> lastSteps = new HashMap<Pattern, Float>();
+
+	// earliest time a step of any running pattern may be due, see getDue
+	private float nextDue = Float.MAX_VALUE;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param clock
+	 */
+	public PatternScheduler(final Clock clock) {
+		assert clock != null : "clock is not initialized";
+		this.clock = clock;
+	}
+
+	/**
+	 * Collect the boxes of all due steps
+	 * 
+	 * @param batch
+	 *            receives the boxes to push
+	 */
+	public void update(final PushBatch batch) {
+		final float now = clock.getTimeInSeconds();
+		if (now < nextDue) {
+			return;
+		}
+		nextDue = Float.MAX_VALUE;
+		for (int r = 0; r < runs.size(); r++) {
+			final Run run = runs.get(r);
+			final float interval = run.pattern.getStepInterval();
+			if ((now - run.lastStep) > interval) {
+				run.lastStep = now;
+				run.pattern.selectBoxes(run.step, batch);
+				run.step = (run.step + 1) % run.pattern.getStepCount();
+			}
+			nextDue = Math.min(nextDue, getDue(run));
+		}
+	}
+
+	/**
+	 * Start a pattern. The first step is due one step interval after the last step of the pattern,
+	 * or after time 0 if it never ran, so it is usually done with the next update. A pattern stopped
+	 * and started again right away keeps its timing. A pattern can be started more than once.
+	 * 
+	 * @param pattern
+	 */
+	public void start(final Pattern pattern) {
+		if (pattern.getStepCount() == 0) {
+			return;
+		}
+		final Run run = new Run(pattern);
+		final Float lastStep = lastSteps.get(pattern);
+		run.lastStep = (lastStep != null) ? lastStep.floatValue() : 0.0f;
+		runs.add(run);
+		nextDue = Math.min(nextDue, getDue(run));
+	}
+
+	/**
+	 * Stop all runs of a pattern
+	 * 
+	 * @param pattern
+	 */
+	public void stop(final Pattern pattern) {
+		for (int r = runs.size() - 1; r >= 0; r--) {
+			if (runs.get(r).pattern == pattern) {
+				stopped(runs.remove(r));
+			}
+		}
+	}
+
+	/**
+	 * Start a pattern if it is not running, stop it otherwise
+	 * 
+	 * @param pattern
+	 */
+	public void toggle(final Pattern pattern) {
+		if (isRunning(pattern)) {
+			stop(pattern);
+		} else {
+			start(pattern);
+		}
+	}
+
+	/**
+	 * @param pattern
+	 * @return true if the pattern is running
+	 */
+	public boolean isRunning(final Pattern pattern) {
+		for (int r = 0; r < runs.size(); r++) {
+			if (runs.get(r).pattern == pattern) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stop all patterns immediately
+	 */
+	public void stopAll() {
+		for (int r = 0; r < runs.size(); r++) {
+			stopped(runs.get(r));
+		}
+		runs.clear();
+		nextDue = Float.MAX_VALUE;
+	}
+
+	/**
+	 * The step of a run is due when <code>now - lastStep &gt; interval</code>. The sum
+	 * <code>lastStep + interval</code> is rounded differently, so the returned time is a few ulps
+	 * earlier: a step is never delayed by a frame, update only checks the runs once more.
+	 * 
+	 * @param run
+	 * @return earliest time the next step of the run may be due
+	 */
+	private static float getDue(final Run run) {
+		final float due = run.lastStep + run.pattern.getStepInterval();
+		return due - 2.0f * Math.ulp(due);
+	}
+
+	/**
+	 * Remember the timing of a stopped run
+	 * 
+	 * @param run
+	 */
+	private void stopped(final Run run) {
+		final Float lastStep = lastSteps.get(run.pattern);
+		if ((lastStep == null) || (lastStep.floatValue() < run.lastStep)) {
+			lastSteps.put(run.pattern, Float.valueOf(run.lastStep));
+		}
+	}
+
+	/**
+	 * @return number of running patterns
+	 */
+	public int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * A running pattern
+	 */
+	private static class Run {
+
+		private final Pattern pattern;
+		// next step to do
+		private int step = 0;
+		// time of the last step
+		private float lastStep;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param pattern
+		 */
+		private Run(final Pattern pattern) {
+			this.pattern = pattern;
+		}
+	}
+
+}
@@ -0,0 +1,249 @@
+package net.stoerbild.demo1.coolarray;
+
+import java.util.Arrays;
+
+/**
+ * Precompiled steps of an array action (snake, wave, rings). For each step the indices of the boxes to
+ * push are stored in one flat array, so running a step only walks its own boxes instead of checking
+ * the whole grid. Tables are built once per grid size.
+ * 
+ * @author mq
+ */
+public final class PatternTable {
+
+	// indices of the pushed boxes of all steps, step after step
+	private final int[] boxes;
+	// first entry in boxes for each step, plus the end of the last step
+	private final int[] stepStart;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param boxes
+	 * @param stepStart
+	 */
+	private PatternTable(final int[] boxes, final int[] stepStart) {
+		this.boxes = boxes;
+		this.stepStart = stepStart;
+	}
+
+	/**
+	 * @return number of steps
+	 */
+	public int getStepCount() {
+		return stepStart.length - 1;
+	}
+
+	/**
+	 * @param step
+	 * @return first entry of the step in {@link #getBoxes()}
+	 */
+	public int getStepStart(final int step) {
+		return stepStart[step];
+	}
+
+	/**
+	 * @param step
+	 * @return end (exclusive) of the step in {@link #getBoxes()}
+	 */
+	public int getStepEnd(final int step) {
+		return stepStart[step + 1];
+	}
+
+	/**
+	 * Box indices of all steps. Must not be modified by the caller.
+	 * 
+	 * @return box indices
+	 */
+	public int[] getBoxes() {
+		return boxes;
+	}
+
+	/**
+	 * A snake going through the array row by row, every other row backwards. One box per step.
+	 * 
+	 * @param xSize
+	 * @param zSize
+	 * @return table
+	 */
+	public static PatternTable snake(final int xSize, final int zSize) {
+		final Builder builder = new Builder(xSize * zSize, xSize * zSize);
+		for (int step = 0; step < xSize * zSize; step++) {
+			final int row = step / xSize;
+			if ((row % 2) > 0) {
+				builder.add(row * xSize + (xSize - 1 - step % xSize));
+			} else {
+				builder.add(step);
+			}
+			builder.endStep();
+		}
+		return builder.build();
+	}
+
+	/**
+	 * A wave going over the array. One row per step.
+	 * 
+	 * @param xSize
+	 * @param zSize
+	 * @return table
+	 */
+	public static PatternTable wave(final int xSize, final int zSize) {
+		final Builder builder = new Builder(xSize * zSize, zSize);
+		for (int z = 0; z < zSize; z++) {
+			for (int x = 0; x < xSize; x++) {
+				builder.add(z * xSize + x);
+			}
+			builder.endStep();
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Rings going over the array from the center to the border. The last step is the ring at the
+	 * border of the array, each step before is one box closer to the center (each ring has 4 walls).
+	 * 
+	 * @param xSize
+	 * @param zSize
+	 * @return table
+	 */
+	public static PatternTable rings(final int xSize, final int zSize) {
+		final int rings = Math.min(xSize, zSize) / 2 + 1;
+		final int[] boxRings = new int[4];
+
+		// count the boxes of each ring (step of the innermost ring first)
+		final int[] stepStart = new int[rings + 1];
+		for (int i = 0; i < xSize * zSize; i++) {
+			final int count = getRings(i % xSize, i / xSize, xSize, zSize, rings, boxRings);
+			for (int r = 0; r < count; r++) {
+				stepStart[rings - boxRings[r]]++;
+			}
+		}
+		for (int step = 0; step < rings; step++) {
+			stepStart[step + 1] += stepStart[step];
+		}
+
+		// fill in the boxes of each ring in grid order
+		final int[] boxes = new int[stepStart[rings]];
+		final int[] next = Arrays.copyOf(stepStart, rings);
+		for (int i = 0; i < xSize * zSize; i++) {
+			final int count = getRings(i % xSize, i / xSize, xSize, zSize, rings, boxRings);
+			for (int r = 0; r < count; r++) {
+				boxes[next[rings - 1 - boxRings[r]]++] = i;
+			}
+		}
+		return new PatternTable(boxes, stepStart);
+	}
+
+	/**
+	 * Get all rings a box is part of. A box can only be part of rings matching its distance to one of
+	 * the borders.
+	 * 
+	 * @param x
+	 * @param z
+	 * @param xSize
+	 * @param zSize
+	 * @param rings
+	 *            number of rings
+	 * @param result
+	 *            receives the rings (at least 4 entries)
+	 * @return number of rings
+	 */
+	private static int getRings(final int x, final int z, final int xSize, final int zSize, final int rings,
+			final int[] result) {
+		int count = 0;
+		final int[] candidates = { x, xSize - x, z, zSize - z };
+		for (int c = 0; c < candidates.length; c++) {
+			final int ring = candidates[c];
+			if ((ring < rings) && isOnRing(x, z, ring, xSize, zSize) && !contains(result, count, ring)) {
+				result[count++] = ring;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Check if a box is part of a ring. Each ring has 4 walls.
+	 * 
+	 * @param x
+	 * @param z
+	 * @param ring
+	 * @param xSize
+	 * @param zSize
+	 * @return true if the box is on one of the walls of the ring
+	 */
+	private static boolean isOnRing(final int x, final int z, final int ring, final int xSize, final int zSize) {
+		final boolean wall1 = (x == ring) && (z >= ring) && (z <= zSize - ring);
+		final boolean wall2 = (x == xSize - ring) && (z >= ring) && (z <= zSize - ring);
+		final boolean wall3 = (z == ring) && (x >= ring) && (x <= xSize - ring);
+		final boolean wall4 = (z == zSize - ring) && (x >= ring) && (x <= xSize - ring);
+		return wall1 || wall2 || wall3 || wall4;
+	}
+
+	/**
+	 * @param values
+	 * @param count
+	 *            number of valid entries in values
+	 * @param value
+	 * @return true if value is one of the valid entries
+	 */
+	private static boolean contains(final int[] values, final int count, final int value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the steps of a table
+	 */
+	private static class Builder {
+
+		private int[] boxes;
+		private int boxCount = 0;
+		private final int[] stepStart;
+		private int stepCount = 0;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param capacity
+		 *            expected number of box indices
+		 * @param steps
+		 *            number of steps
+		 */
+		private Builder(final int capacity, final int steps) {
+			boxes = new int[Math.max(1, capacity)];
+			stepStart = new int[steps + 1];
+		}
+
+		/**
+		 * Add a box to the current step
+		 * 
+		 * @param box
+		 */
+		private void add(final int box) {
+			if (boxCount == boxes.length) {
+				boxes = Arrays.copyOf(boxes, boxes.length * 2);
+			}
+			boxes[boxCount++] = box;
+		}
+
+		/**
+		 * Finish the current step
+		 */
+		private void endStep() {
+			stepStart[++stepCount] = boxCount;
+		}
+
+		/**
+		 * @return the table
+		 */
+		private PatternTable build() {
+			assert stepCount == stepStart.length - 1 : "not all steps are finished";
+			return new PatternTable(Arrays.copyOf(boxes, boxCount), stepStart);
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+package net.stoerbild.demo1.coolarray;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import net.stoerbild.demo1.helper.DaemonThreadFactory;
+import net.stoerbild.demo1.helper.FixedClock;
+
+/**
+ * Simulates a {@link CoolGrid} in its own thread with a fixed number of steps per second, so the
+ * physics runs in parallel to rendering.
+ * <p>
+ * After each step the heights are published as {@link HeightSnapshot} through a lock free triple
+ * buffer: the worker writes into its own snapshot and swaps it with the shared one, the render thread
+ * swaps the shared snapshot with its own if a newer one is available. Neither thread ever waits for
+ * the other. Actions are queued as {@link GridCommand} in a ring buffer without allocating and
+ * executed by the worker before its next step.
+ * <p>
+ * A snapshot only contains the moving boxes and the boxes that came to rest. The render thread may
+ * skip snapshots, so the rested boxes of the physics are only cleared once the render thread took the
+ * last published snapshot; until then they are published again with every step.
+ * 
+ * @author mq
+ */
+public class PhysicsWorker implements Runnable {
+
+	// steps that may be missed before the worker stops catching up
+	private static final int MAX_LAG_STEPS = 30;
+	// commands waiting for the next step (power of two)
+	private static final int COMMAND_CAPACITY = 1024;
+
+	private final CoolGrid grid;
+	private final FixedClock clock;
+	private final long stepNanos;
+
+	// optional, called after each step
+	private GridListener listener = null;
+
+	// queued commands: written by a single submitting thread, read by the worker
+	private final AtomicReferenceArray<GridCommand> commands = new AtomicReferenceArray<GridCommand>(
+			COMMAND_CAPACITY);
+	// next command to execute and next free slot, counting up forever
+	private final AtomicLong commandHead = new AtomicLong();
+	private final AtomicLong commandTail = new AtomicLong();
+
+	// triple buffer: back is only used by the worker, front only by the reader
+	private final AtomicReference<HeightSnapshot> shared;
+	private HeightSnapshot back;
+	private HeightSnapshot front;
+	private long sequence = 0;
+
+	private volatile boolean running = false;
+	private Thread thread = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param grid
+	 *            the simulated grid, must not be used by other threads while the worker runs
+	 * @param clock
+	 *            clock of the grid, ticked once per step
+	 * @param stepsPerSecond
+	 */
+	public PhysicsWorker(final CoolGrid grid, final FixedClock clock, final float stepsPerSecond) {
+		this.grid = grid;
+		this.clock = clock;
+		stepNanos = (long) (1.0e9 / stepsPerSecond);
+		final int size = grid.getPhysics().getSize();
+		final long now = System.nanoTime();
+		back = new HeightSnapshot(size);
+		front = new HeightSnapshot(size);
+		final HeightSnapshot initial = new HeightSnapshot(size);
+		initial.copyFrom(grid.getPhysics(), now, ++sequence);
+		shared = new AtomicReference<HeightSnapshot>(initial);
+	}
+
+	/**
+	 * Start the worker thread
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		thread = new DaemonThreadFactory("physics-worker").newThread(this);
+		thread.start();
+	}
+
+	/**
+	 * Stop the worker thread and wait for it to finish the current step
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		long nextStep = System.nanoTime();
+		while (running) {
+			final long now = System.nanoTime();
+			if (now < nextStep) {
+				LockSupport.parkNanos(nextStep - now);
+				continue;
+			}
+			if (now - nextStep > MAX_LAG_STEPS * stepNanos) {
+				// too far behind (e.g. the machine was suspended), continue from now
+				nextStep = now;
+			}
+			step();
+			nextStep += stepNanos;
+		}
+	}
+
+	/**
+	 * Execute all queued commands, do one simulation step and publish the heights
+	 */
+	private void step() {
+		if (shared.get().getSequence() != sequence) {
+			// the reader took the last snapshot, the boxes that came to rest until then are drawn
+			grid.getPhysics().clearRested();
+		}
+		long head = commandHead.get();
+		final long tail = commandTail.get();
+		while (head < tail) {
+			final int slot = (int) (head & (COMMAND_CAPACITY - 1));
+			final GridCommand command = commands.get(slot);
+			commands.lazySet(slot, null);
+			command.execute(grid);
+			commandHead.lazySet(++head);
+		}
+		final long start = System.nanoTime();
+		clock.tick();
+		grid.update();
+		final long end = System.nanoTime();
+		back.copyFrom(grid.getPhysics(), end, ++sequence);
+		back = shared.getAndSet(back);
+		if (listener != null) {
+			listener.stepped(grid, end - start);
+		}
+	}
+
+	/**
+	 * Queue a command, it is executed before the next step. Must always be called from the same
+	 * (render) thread.
+	 * 
+	 * @param command
+	 * @return false if the command was dropped because the worker is too far behind
+	 */
+	public boolean submit(final GridCommand command) {
+		final long tail = commandTail.get();
+		if (tail - commandHead.get() >= COMMAND_CAPACITY) {
+			return false;
+		}
+		commands.set((int) (tail & (COMMAND_CAPACITY - 1)), command);
+		commandTail.lazySet(tail + 1);
+		return true;
+	}
+
+	/**
+	 * Get the latest published heights. Must always be called from the same (render) thread, the
+	 * snapshot is valid until the next call.
+	 * 
+	 * @return latest snapshot
+	 */
+	public HeightSnapshot acquire() {
+		if (shared.get().getSequence() > front.getSequence()) {
+			front = shared.getAndSet(front);
+		}
+		return front;
+	}
+
+	/**
+	 * Set a listener called after each step in the worker thread. Must be set before the worker is
+	 * started.
+	 * 
+	 * @param listener
+	 */
+	public void setListener(final GridListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return time between two steps in nanoseconds
+	 */
+	public long getStepNanos() {
+		return stepNanos;
+	}
+
+	/**
+	 * @return true if the worker thread is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+}
@@ -0,0 +1,86 @@
+package net.stoerbild.demo1.coolarray;
+
+import java.util.Arrays;
+
+/**
+ * Collects the indices of all boxes to push during a frame, so they can be pushed in a single pass.
+ * A box may be added more than once, it is pushed once per entry.
+ * 
+ * @author mq
+ */
+public class PushBatch {
+
+	private int[] boxes;
+	private int count = 0;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param capacity
+	 *            initial number of entries (grows if needed)
+	 */
+	public PushBatch(final int capacity) {
+		boxes = new int[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Add a single box
+	 * 
+	 * @param box
+	 *            index of the box
+	 */
+	public void add(final int box) {
+		ensureCapacity(count + 1);
+		boxes[count++] = box;
+	}
+
+	/**
+	 * Add several boxes
+	 * 
+	 * @param indices
+	 *            of the boxes
+	 * @param from
+	 *            first entry in indices
+	 * @param to
+	 *            end (exclusive) in indices
+	 */
+	public void add(final int[] indices, final int from, final int to) {
+		ensureCapacity(count + to - from);
+		System.arraycopy(indices, from, boxes, count, to - from);
+		count += to - from;
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Box indices of the batch, only the first {@link #getCount()} entries are valid
+	 * 
+	 * @return box indices
+	 */
+	public int[] getBoxes() {
+		return boxes;
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @param capacity
+	 *            minimum number of entries
+	 */
+	private void ensureCapacity(final int capacity) {
+		if (capacity > boxes.length) {
+			boxes = Arrays.copyOf(boxes, Math.max(capacity, boxes.length * 2));
+		}
+	}
+
+}
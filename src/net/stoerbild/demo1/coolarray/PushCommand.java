@@ -0,0 +1,49 @@
+package net.stoerbild.demo1.coolarray;
+
+/**
+ * Pushes the box at a position of the grid, see {@link CoolGrid#push(int, int)}
+ * 
+ * @author mq
+ */
+public class PushCommand implements GridCommand {
+
+	private final int x;
+	private final int z;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param x
+	 *            column of the box
+	 * @param z
+	 *            row of the box
+	 */
+	public PushCommand(final int x, final int z) {
+		this.x = x;
+		this.z = z;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.coolarray.GridCommand#execute(net.stoerbild.demo1.coolarray.CoolGrid)
+	 */
+	public void execute(final CoolGrid grid) {
+		grid.push(x, z);
+	}
+
+	/**
+	 * @return column of the box
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * @return row of the box
+	 */
+	public int getZ() {
+		return z;
+	}
+
+}
@@ -0,0 +1,54 @@
+package net.stoerbild.demo1.coolarray;
+
+/**
+ * Pattern with precompiled steps
+ * 
+ * @author mq
+ */
+public class TablePattern implements Pattern {
+
+	private final PatternTable table;
+	private final float stepInterval;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param table
+	 *            boxes of all steps
+	 * @param stepInterval
+	 *            time between two steps in seconds
+	 */
+	public TablePattern(final PatternTable table, final float stepInterval) {
+		assert table != null : "table is not initialized";
+		this.table = table;
+		this.stepInterval = stepInterval;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.coolarray.Pattern#getStepInterval()
+	 */
+	public float getStepInterval() {
+		return stepInterval;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.coolarray.Pattern#getStepCount()
+	 */
+	public int getStepCount() {
+		return table.getStepCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.coolarray.Pattern#selectBoxes(int, net.stoerbild.demo1.coolarray.PushBatch)
+	 */
+	public void selectBoxes(final int step, final PushBatch batch) {
+		batch.add(table.getBoxes(), table.getStepStart(step), table.getStepEnd(step));
+	}
+
+}
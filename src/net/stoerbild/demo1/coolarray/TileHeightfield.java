@@ -0,0 +1,125 @@
+package net.stoerbild.demo1.coolarray;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.renderer.Renderer;
+import com.jme.scene.TriMesh;
+import com.jme.util.geom.BufferUtils;
+
+/**
+ * Low detail version of a {@link CoolTile} seen from far away: only the top of each box, all boxes
+ * of the tile in one mesh. A box needs 4 vertices instead of 24 and the mesh does not cast shadows.
+ * Boxes have the same size and layout as {@link CoolBox}.
+ * 
+ * @author mq
+ */
+public class TileHeightfield extends TriMesh {
+
+	private static final long serialVersionUID = -4170537390624711253L;
+
+	private static final int VERTICES_PER_BOX = 4;
+
+	// corners of the top of a box (x and z of the unit square), counterclockwise seen from above
+	private static final int[] TOP_CORNERS = { 0, 1, 1, 1, 1, 0, 0, 0 };
+
+	// position and size of the tile in the grid
+	private final int xStart;
+	private final int zStart;
+	private final int xCount;
+	private final int zCount;
+
+	// bound of the mesh, only the y-extent changes
+	private final BoundingBox bound;
+
+	/**
+	 * Constructor, all boxes are on the floor
+	 *
+	 * @param name
+	 *            of the mesh
+	 * @param xStart
+	 *            first box in x-direction
+	 * @param zStart
+	 *            first box in z-direction
+	 * @param xCount
+	 *            number of boxes in x-direction
+	 * @param zCount
+	 *            number of boxes in z-direction
+	 */
+	public TileHeightfield(final String name, final int xStart, final int zStart, final int xCount,
+			final int zCount) {
+		super(name);
+		this.xStart = xStart;
+		this.zStart = zStart;
+		this.xCount = xCount;
+		this.zCount = zCount;
+		final int boxes = xCount * zCount;
+		final FloatBuffer vertices = BufferUtils.createVector3Buffer(boxes * VERTICES_PER_BOX);
+		final FloatBuffer normals = BufferUtils.createVector3Buffer(boxes * VERTICES_PER_BOX);
+		final IntBuffer indices = BufferUtils.createIntBuffer(boxes * 6);
+		for (int j = 0; j < zCount; j++) {
+			for (int i = 0; i < xCount; i++) {
+				final float xOffset = CoolBox.SPACING * (xStart + i - 1);
+				final float zOffset = CoolBox.SPACING * (zStart + j - 1);
+				for (int c = 0; c < VERTICES_PER_BOX; c++) {
+					vertices.put(xOffset + TOP_CORNERS[c * 2] * CoolBox.WIDTH);
+					vertices.put(CoolBox.HEIGHT);
+					vertices.put(zOffset + TOP_CORNERS[c * 2 + 1] * CoolBox.WIDTH);
+					normals.put(0).put(1).put(0);
+				}
+				// two triangles per box
+				final int v = (j * xCount + i) * VERTICES_PER_BOX;
+				indices.put(v).put(v + 1).put(v + 2);
+				indices.put(v).put(v + 2).put(v + 3);
+			}
+		}
+		reconstruct(vertices, normals, null, null, indices);
+		setCastsShadows(false);
+
+		// x and z extent never change
+		bound = new BoundingBox();
+		CoolBox.setGridBound(bound, xStart, zStart, xCount, zCount, 0, 0);
+		setModelBound(bound);
+	}
+
+	/**
+	 * Move a box to a new height. Call {@link #updateHeightBound(float, float)} after all boxes have
+	 * been moved.
+	 *
+	 * @param i
+	 *            index of the box in the tile (row by row)
+	 * @param height
+	 *            y-translation of the box
+	 */
+	public void setHeight(final int i, final float height) {
+		final FloatBuffer vertices = getVertexBuffer();
+		final int first = i * VERTICES_PER_BOX * 3 + 1;
+		for (int v = 0; v < VERTICES_PER_BOX; v++) {
+			vertices.put(first + v * 3, height + CoolBox.HEIGHT);
+		}
+	}
+
+	/**
+	 * Update the bound of the mesh after boxes have been moved
+	 *
+	 * @param minHeight
+	 *            lowest y-translation of the boxes
+	 * @param maxHeight
+	 *            highest y-translation of the boxes
+	 */
+	public void updateHeightBound(final float minHeight, final float maxHeight) {
+		CoolBox.setGridBound(bound, xStart, zStart, xCount, zCount, minHeight, maxHeight);
+		updateWorldBound();
+	}
+
+	/**
+	 * The mesh changes whenever a box of the tile moves, so it is never compiled into a display list
+	 *
+	 * @see com.jme.scene.Geometry#lockMeshes(com.jme.renderer.Renderer)
+	 */
+	@Override
+	public void lockMeshes(final Renderer r) {
+	}
+
+}
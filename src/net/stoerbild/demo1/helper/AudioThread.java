@@ -0,0 +1,90 @@
+package net.stoerbild.demo1.helper;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.jmex.audio.AudioSystem;
+
+/**
+ * Updates the {@link AudioSystem} in its own thread. Streamed tracks are read in fixed-size chunks
+ * into a small ring of buffers, each update refills the buffers that have been played. Doing this
+ * outside the render thread keeps the music running during long frames (e.g. while a level is
+ * loaded).
+ * <p>
+ * The audio system must not be used by other threads without synchronizing on it while the thread
+ * runs.
+ * 
+ * @author mq
+ */
+public class AudioThread implements Runnable {
+
+	private final AudioSystem system;
+	private final long intervalNanos;
+
+	private volatile boolean running = false;
+	private Thread thread = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param system
+	 *            the audio system to update
+	 * @param interval
+	 *            time between two updates in seconds, must be shorter than the playing time of a
+	 *            stream buffer
+	 */
+	public AudioThread(final AudioSystem system, final float interval) {
+		this.system = system;
+		intervalNanos = (long) (interval * 1.0e9);
+	}
+
+	/**
+	 * Start the audio thread
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		thread = new DaemonThreadFactory("audio").newThread(this);
+		thread.start();
+	}
+
+	/**
+	 * Stop the audio thread and wait for the current update to finish
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while (running) {
+			synchronized (system) {
+				system.update();
+			}
+			LockSupport.parkNanos(intervalNanos);
+		}
+	}
+
+	/**
+	 * @return true if the audio thread is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+}
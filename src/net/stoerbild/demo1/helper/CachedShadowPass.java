@@ -0,0 +1,104 @@
+package net.stoerbild.demo1.helper;
+
+import com.jme.renderer.pass.ShadowedRenderPass;
+import com.jme.scene.Spatial;
+
+/**
+ * Stencil shadow pass that only collects its occluder meshes when they changed. The super class
+ * walks all occluders every frame to find the meshes casting shadows; with an
+ * {@link OccluderSource} the meshes of the last frame are used again until the source reports a
+ * change. The shadow volumes of meshes that did not move are kept by
+ * {@link com.jme.scene.shadow.MeshShadows} itself.
+ * 
+ * @author mq
+ */
+public class CachedShadowPass extends ShadowedRenderPass {
+
+	private static final long serialVersionUID = -2285946744134873302L;
+
+	// reports changes of the occluders, null to collect them every frame
+	private OccluderSource occluderSource = null;
+	// version of the source the occluder meshes were collected for
+	private long occluderVersion = 0;
+	private boolean collected = false;
+
+	// frames the occluder meshes were collected in
+	private long collectCount = 0;
+
+	/**
+	 * @param occluderSource
+	 *            the scene of all occluders of the pass, null to collect the occluder meshes every
+	 *            frame
+	 */
+	public void setOccluderSource(final OccluderSource occluderSource) {
+		this.occluderSource = occluderSource;
+		collected = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.renderer.pass.ShadowedRenderPass#addOccluder(com.jme.scene.Spatial)
+	 */
+	@Override
+	public void addOccluder(final Spatial occluder) {
+		super.addOccluder(occluder);
+		collected = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.renderer.pass.ShadowedRenderPass#removeOccluder(com.jme.scene.Spatial)
+	 */
+	@Override
+	public boolean removeOccluder(final Spatial occluder) {
+		collected = false;
+		return super.removeOccluder(occluder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.renderer.pass.ShadowedRenderPass#clearOccluders()
+	 */
+	@Override
+	public void clearOccluders() {
+		super.clearOccluders();
+		collected = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.renderer.pass.ShadowedRenderPass#setupOccluderMeshes()
+	 */
+	@Override
+	protected void setupOccluderMeshes() {
+		if (occluderSource != null) {
+			final long version = occluderSource.getOccluderVersion();
+			if (collected && (version == occluderVersion)) {
+				return;
+			}
+			occluderVersion = version;
+			collected = true;
+		}
+		super.setupOccluderMeshes();
+		collectCount++;
+	}
+
+	/**
+	 * @return number of meshes casting shadows, as collected last
+	 */
+	public int getOccluderMeshCount() {
+		return occluderMeshes != null ? occluderMeshes.size() : 0;
+	}
+
+	/**
+	 * @return number of frames the occluder meshes were collected in
+	 */
+	public long getCollectCount() {
+		return collectCount;
+	}
+
+}
@@ -0,0 +1,21 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * Source of time for everything that is animated. Allows to run the simulation against the jME timer
+ * or against a fixed, simulated time.
+ * 
+ * @author mq
+ */
+public interface Clock {
+
+	/**
+	 * @return current time in seconds
+	 */
+	public float getTimeInSeconds();
+
+	/**
+	 * @return time passed during the last frame in seconds
+	 */
+	public float getTimePerFrame();
+
+}
@@ -0,0 +1,466 @@
+package net.stoerbild.demo1.helper;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.stoerbild.demo1.coolarray.GridAction;
+import net.stoerbild.demo1.coolarray.GridCommand;
+import net.stoerbild.demo1.coolarray.PushCommand;
+
+/**
+ * Remote control of the array. Receives text commands via UDP and TCP on the same port, one thread
+ * handles all connections with a {@link Selector}. A datagram or a TCP stream may contain any number
+ * of commands, separated by new lines or ';':
+ * 
+ * <pre>
+ * pushall | pushrand | floor | snake | wave | rings | hold | stopall | velocity | push &lt;x&gt; &lt;z&gt;
+ * </pre>
+ * 
+ * The commands are put into a lock-free queue, the level takes them with {@link #poll()} once per
+ * frame. Unknown commands are counted and dropped, nothing is sent back. There is no authentication,
+ * so the server should only listen on the loopback interface unless the network is trusted, see
+ * {@link #getBindAddress()}.
+ * 
+ * @author mq
+ */
+public class CommandServer implements Runnable {
+
+	// system property with the address to listen on, e.g. 0.0.0.0 for all interfaces
+	public static final String BIND_ADDRESS_PROPERTY = "stoerbild.remote.address";
+
+	// longest command, longer commands are dropped
+	private static final int MAX_COMMAND_LENGTH = 256;
+	// largest UDP payload
+	private static final int MAX_DATAGRAM = 65507;
+	// commands not taken by the level, more are dropped (e.g. while a level is loading)
+	private static final int MAX_QUEUED = 4096;
+	// socket buffer for datagrams arriving in bursts while the server thread waits for a core
+	private static final int UDP_RECEIVE_BUFFER = 1024 * 1024;
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	// commands without arguments
+	private static final Map<String, GridCommand> ACTIONS = new HashMap<String, GridCommand>();
+
+	static {
+		ACTIONS.put("pushall", GridAction.PUSH_ALL);
+		ACTIONS.put("pushrand", GridAction.PUSH_RAND);
+		ACTIONS.put("floor", GridAction.SWITCH_FLOOR);
+		ACTIONS.put("snake", GridAction.SWITCH_SNAKE);
+		ACTIONS.put("wave", GridAction.SWITCH_WAVE);
+		ACTIONS.put("rings", GridAction.SWITCH_RINGS);
+		ACTIONS.put("hold", GridAction.SWITCH_HOLD);
+		ACTIONS.put("stopall", GridAction.STOP_ALL);
+		ACTIONS.put("velocity", GridAction.CHANGE_VELOCITY);
+	}
+
+	/**
+	 * Incomplete command of a TCP connection
+	 */
+	private static final class Connection {
+		final ByteBuffer buffer = ByteBuffer.allocate(MAX_COMMAND_LENGTH);
+		// the current command is too long, skip it up to the next separator
+		boolean skipping = false;
+	}
+
+	private final InetSocketAddress address;
+	private final int maxQueued;
+
+	// received commands, taken by the render thread
+	private final ConcurrentLinkedQueue<GridCommand> queue = new ConcurrentLinkedQueue<GridCommand>();
+	private final AtomicInteger queued = new AtomicInteger();
+
+	// statistics, only written by the server thread
+	private volatile int receivedCount = 0;
+	private volatile int rejectedCount = 0;
+	private volatile int droppedCount = 0;
+
+	private final ByteBuffer datagram = ByteBuffer.allocate(MAX_DATAGRAM);
+
+	private Selector selector = null;
+	private DatagramChannel udp = null;
+	private ServerSocketChannel tcp = null;
+
+	private volatile boolean running = false;
+	private Thread thread = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param address
+	 *            local address and port for UDP and TCP, port 0 for any free port
+	 */
+	public CommandServer(final InetSocketAddress address) {
+		this(address, MAX_QUEUED);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param address
+	 *            local address and port for UDP and TCP, port 0 for any free port
+	 * @param maxQueued
+	 *            commands not taken by the level, more are dropped
+	 */
+	CommandServer(final InetSocketAddress address, final int maxQueued) {
+		this.address = address;
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * Address to listen on: the loopback interface, or the address of the system property
+	 * {@link #BIND_ADDRESS_PROPERTY}
+	 * 
+	 * @return local address of the server
+	 * @throws UnknownHostException
+	 *             if the address of the system property is invalid
+	 */
+	public static InetAddress getBindAddress() throws UnknownHostException {
+		final String host = System.getProperty(BIND_ADDRESS_PROPERTY);
+		if ((host == null) || (host.trim().length() == 0)) {
+			// no host name is the loopback address (getLoopbackAddress is not in Java 6)
+			return InetAddress.getByName(null);
+		}
+		return InetAddress.getByName(host.trim());
+	}
+
+	/**
+	 * Open the port and start the server thread
+	 * 
+	 * @throws IOException
+	 *             if the port can not be opened
+	 */
+	public synchronized void start() throws IOException {
+		if (thread != null) {
+			return;
+		}
+		try {
+			selector = Selector.open();
+			tcp = ServerSocketChannel.open();
+			tcp.socket().setReuseAddress(true);
+			tcp.socket().bind(address);
+			tcp.configureBlocking(false);
+			tcp.register(selector, SelectionKey.OP_ACCEPT);
+			// same port for UDP, even if the port was chosen by the system
+			udp = DatagramChannel.open();
+			udp.socket().setReceiveBufferSize(UDP_RECEIVE_BUFFER);
+			udp.socket().bind(new InetSocketAddress(address.getAddress(), tcp.socket().getLocalPort()));
+			udp.configureBlocking(false);
+			udp.register(selector, SelectionKey.OP_READ);
+		} catch (final IOException e) {
+			close();
+			throw e;
+		}
+		running = true;
+		thread = new DaemonThreadFactory("command-server").newThread(this);
+		thread.start();
+	}
+
+	/**
+	 * Stop the server thread and close all connections. Commands not taken yet stay in the queue.
+	 */
+	public synchronized void stop() {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+		close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while (running) {
+			try {
+				selector.select();
+			} catch (final IOException e) {
+				System.err.println("Command server failed: " + e.getMessage());
+				running = false;
+				break;
+			}
+			final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				final SelectionKey key = keys.next();
+				keys.remove();
+				try {
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else if (key.channel() == udp) {
+						receive();
+					} else {
+						read(key);
+					}
+				} catch (final IOException e) {
+					// only the connection is lost, e.g. closed by the client
+					closeConnection(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Accept all waiting TCP connections
+	 * 
+	 * @throws IOException
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = tcp.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.register(selector, SelectionKey.OP_READ, new Connection());
+		}
+	}
+
+	/**
+	 * Read all waiting datagrams, each datagram ends with its last command
+	 * 
+	 * @throws IOException
+	 */
+	private void receive() throws IOException {
+		datagram.clear();
+		while (udp.receive(datagram) != null) {
+			datagram.flip();
+			final byte[] bytes = datagram.array();
+			int start = 0;
+			final int end = datagram.limit();
+			for (int i = 0; i <= end; i++) {
+				if ((i == end) || isSeparator(bytes[i])) {
+					handle(bytes, start, i);
+					start = i + 1;
+				}
+			}
+			datagram.clear();
+		}
+	}
+
+	/**
+	 * Read a TCP connection, an incomplete command is kept for the next read
+	 * 
+	 * @param key
+	 *            of the connection
+	 * @throws IOException
+	 */
+	private void read(final SelectionKey key) throws IOException {
+		final SocketChannel channel = (SocketChannel) key.channel();
+		final Connection connection = (Connection) key.attachment();
+		final ByteBuffer buffer = connection.buffer;
+		int read;
+		while ((read = channel.read(buffer)) > 0) {
+			final byte[] bytes = buffer.array();
+			int start = 0;
+			for (int i = 0; i < buffer.position(); i++) {
+				if (isSeparator(bytes[i])) {
+					if (!connection.skipping) {
+						handle(bytes, start, i);
+					}
+					connection.skipping = false;
+					start = i + 1;
+				}
+			}
+			if ((start == 0) && !buffer.hasRemaining()) {
+				// no separator in a full buffer: drop the command
+				if (!connection.skipping) {
+					rejectedCount++;
+				}
+				connection.skipping = true;
+				buffer.clear();
+			} else {
+				// keep the incomplete command
+				buffer.limit(buffer.position());
+				buffer.position(start);
+				buffer.compact();
+			}
+		}
+		if (read < 0) {
+			closeConnection(key);
+		}
+	}
+
+	/**
+	 * Parse and queue a command
+	 * 
+	 * @param bytes
+	 * @param start
+	 *            first byte of the command
+	 * @param end
+	 *            end of the command (exclusive)
+	 */
+	private void handle(final byte[] bytes, final int start, final int end) {
+		if (end - start > MAX_COMMAND_LENGTH) {
+			rejectedCount++;
+			return;
+		}
+		final String text = new String(bytes, start, end - start, ASCII).trim();
+		if (text.length() == 0) {
+			return;
+		}
+		final GridCommand command = parse(text);
+		if (command == null) {
+			rejectedCount++;
+			return;
+		}
+		// counted after queueing, a command counted as received can be taken
+		if (queued.incrementAndGet() > maxQueued) {
+			queued.decrementAndGet();
+			droppedCount++;
+		} else {
+			queue.offer(command);
+		}
+		receivedCount++;
+	}
+
+	/**
+	 * @param b
+	 * @return true if the byte ends a command
+	 */
+	private static boolean isSeparator(final byte b) {
+		return (b == '\n') || (b == '\r') || (b == ';');
+	}
+
+	/**
+	 * Parse a single command
+	 * 
+	 * @param text
+	 *            the command, e.g. "pushall" or "push 3 7"
+	 * @return the command, null if the command is unknown or its arguments are invalid
+	 */
+	public static GridCommand parse(final String text) {
+		final String[] words = text.trim().toLowerCase(Locale.ENGLISH).split("\\s+");
+		if (words.length == 1) {
+			return ACTIONS.get(words[0]);
+		}
+		if ((words.length == 3) && words[0].equals("push")) {
+			try {
+				return new PushCommand(Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+			} catch (final NumberFormatException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Take the next received command. Called by the level once per frame until null is returned.
+	 * 
+	 * @return the oldest command not taken yet, null if there is none
+	 */
+	public GridCommand poll() {
+		final GridCommand command = queue.poll();
+		if (command != null) {
+			queued.decrementAndGet();
+		}
+		return command;
+	}
+
+	/**
+	 * @param key
+	 *            of a TCP connection
+	 */
+	private void closeConnection(final SelectionKey key) {
+		key.cancel();
+		closeChannel(key.channel());
+	}
+
+	/**
+	 * @param channel
+	 *            to close, may be null
+	 */
+	private static void closeChannel(final Channel channel) {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (final IOException e) {
+			// closed anyway
+		}
+	}
+
+	/**
+	 * Close the port and all connections
+	 */
+	private void close() {
+		if (selector != null) {
+			for (final SelectionKey key : selector.keys()) {
+				closeConnection(key);
+			}
+			try {
+				selector.close();
+			} catch (final IOException e) {
+				// closed anyway
+			}
+		}
+		closeChannel(tcp);
+		closeChannel(udp);
+		selector = null;
+		tcp = null;
+		udp = null;
+	}
+
+	/**
+	 * @return local port of the server, -1 if the server is not running
+	 */
+	public int getPort() {
+		final ServerSocketChannel channel = tcp;
+		return channel != null ? channel.socket().getLocalPort() : -1;
+	}
+
+	/**
+	 * @return true if the server thread is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return number of valid commands received
+	 */
+	public int getReceivedCount() {
+		return receivedCount;
+	}
+
+	/**
+	 * @return number of unknown or invalid commands
+	 */
+	public int getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * @return number of valid commands dropped because the level did not take them
+	 */
+	public int getDroppedCount() {
+		return droppedCount;
+	}
+
+}
@@ -0,0 +1,517 @@
+package net.stoerbild.demo1.helper;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import net.stoerbild.demo1.coolarray.CoolGrid;
+
+/**
+ * Metrics of the running demo, published as MBean (<code>net.stoerbild.demo1:type=DemoMetrics</code>)
+ * so unattended displays can be monitored with any JMX client.
+ * <p>
+ * The render thread never blocks for the metrics: timings go into the lock free
+ * {@link FrameTimings}, the simulation state is copied into volatile fields after each step by the
+ * thread running the simulation. JMX requests read these from their own thread.
+ * <p>
+ * Timings are published twice: since the start (or the last reset) and as recent values of the last
+ * 10 to 20 seconds, which show the current state of a long running display.
+ * 
+ * @author mq
+ */
+public class DemoMetrics implements DemoMetricsMBean {
+
+	private static final String OBJECT_NAME = "net.stoerbild.demo1:type=DemoMetrics";
+
+	// length of the window of the recent timings
+	private static final long RECENT_WINDOW_NANOS = 10L * 1000 * 1000 * 1000;
+
+	private final FrameTimings timings;
+
+	// recent timings of the sections and of the named histograms
+	private final HistogramWindow[] recentSections;
+	private final Map<String, HistogramWindow> recentNamed = new HashMap<String, HistogramWindow>();
+
+	// simulation state, written after each step by the thread running the simulation: the render
+	// thread, or the physics worker while it runs (never both at once, the worker is joined when it
+	// stops). Each field is published on its own, a reader may see fields of two consecutive steps.
+	private volatile int boxCount = 0;
+	private volatile int activeBoxes = 0;
+	private volatile boolean snakeRunning = false;
+	private volatile boolean waveRunning = false;
+	private volatile boolean ringsRunning = false;
+	private volatile boolean hold = false;
+	private volatile boolean floorEnabled = false;
+	private volatile int qualityLevel = 0;
+
+	// name of the MBean, null if not registered
+	private ObjectName name = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param timings
+	 *            frame timings of the demo
+	 */
+	public DemoMetrics(final FrameTimings timings) {
+		this.timings = timings;
+		final FrameTimings.Section[] sections = FrameTimings.Section.values();
+		recentSections = new HistogramWindow[sections.length];
+		for (int i = 0; i < sections.length; i++) {
+			recentSections[i] = new HistogramWindow(timings.getHistogram(sections[i]), RECENT_WINDOW_NANOS);
+		}
+	}
+
+	/**
+	 * Register the MBean at the platform MBean server. Errors are only reported, the demo runs without
+	 * metrics then.
+	 */
+	public void register() {
+		try {
+			name = new ObjectName(OBJECT_NAME);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		} catch (final JMException e) {
+			System.err.println("Could not register metrics: " + e);
+			name = null;
+		}
+	}
+
+	/**
+	 * Remove the MBean from the platform MBean server
+	 */
+	public void unregister() {
+		if (name == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (final JMException e) {
+			System.err.println("Could not unregister metrics: " + e);
+		}
+		name = null;
+	}
+
+	/**
+	 * Copy the state of the simulation, called after each step by the thread running the simulation
+	 * (the render thread or the physics worker)
+	 * 
+	 * @param grid
+	 */
+	public void updateSimulation(final CoolGrid grid) {
+		boxCount = grid.getPhysics().getSize();
+		activeBoxes = grid.getPhysics().getActiveCount();
+		snakeRunning = grid.isSnakeRunning();
+		waveRunning = grid.isWaveRunning();
+		ringsRunning = grid.isRingsRunning();
+		hold = grid.isHold();
+		floorEnabled = grid.isFloorEnabled();
+	}
+
+	/**
+	 * @param qualityLevel
+	 *            current render quality level
+	 */
+	public void setQualityLevel(final int qualityLevel) {
+		this.qualityLevel = qualityLevel;
+	}
+
+	/**
+	 * @return timings recorded by the render thread
+	 */
+	public FrameTimings getFrameTimings() {
+		return timings;
+	}
+
+	/**
+	 * @param section
+	 * @return histogram of the section
+	 */
+	private FrameHistogram get(final FrameTimings.Section section) {
+		return timings.getHistogram(section);
+	}
+
+	/**
+	 * @param section
+	 * @return recent values of the section, valid until the next call for the section
+	 */
+	private FrameHistogram recent(final FrameTimings.Section section) {
+		return recentSections[section.ordinal()].getRecent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getFrameCount()
+	 */
+	public long getFrameCount() {
+		return get(FrameTimings.Section.FRAME).getCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getFrameTimeMean()
+	 */
+	public float getFrameTimeMean() {
+		return get(FrameTimings.Section.FRAME).getMean();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getFrameTimeP50()
+	 */
+	public float getFrameTimeP50() {
+		return get(FrameTimings.Section.FRAME).getPercentile(50);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getFrameTimeP95()
+	 */
+	public float getFrameTimeP95() {
+		return get(FrameTimings.Section.FRAME).getPercentile(95);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getFrameTimeP99()
+	 */
+	public float getFrameTimeP99() {
+		return get(FrameTimings.Section.FRAME).getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getFrameTimeMax()
+	 */
+	public float getFrameTimeMax() {
+		return get(FrameTimings.Section.FRAME).getMax();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getFrameJitter()
+	 */
+	public float getFrameJitter() {
+		return get(FrameTimings.Section.FRAME).getJitter();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getUpdateTimeP99()
+	 */
+	public float getUpdateTimeP99() {
+		return get(FrameTimings.Section.UPDATE).getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getPhysicsTimeP50()
+	 */
+	public float getPhysicsTimeP50() {
+		return get(FrameTimings.Section.PHYSICS).getPercentile(50);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getPhysicsTimeP99()
+	 */
+	public float getPhysicsTimeP99() {
+		return get(FrameTimings.Section.PHYSICS).getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRenderTimeP99()
+	 */
+	public float getRenderTimeP99() {
+		return get(FrameTimings.Section.RENDER).getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getPassTimes()
+	 */
+	public String[] getPassTimes() {
+		return getPassTimes(false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentFrameCount()
+	 */
+	public synchronized long getRecentFrameCount() {
+		return recent(FrameTimings.Section.FRAME).getCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentFrameTimeMean()
+	 */
+	public synchronized float getRecentFrameTimeMean() {
+		return recent(FrameTimings.Section.FRAME).getMean();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentFrameTimeP50()
+	 */
+	public synchronized float getRecentFrameTimeP50() {
+		return recent(FrameTimings.Section.FRAME).getPercentile(50);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentFrameTimeP95()
+	 */
+	public synchronized float getRecentFrameTimeP95() {
+		return recent(FrameTimings.Section.FRAME).getPercentile(95);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentFrameTimeP99()
+	 */
+	public synchronized float getRecentFrameTimeP99() {
+		return recent(FrameTimings.Section.FRAME).getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentFrameTimeMax()
+	 */
+	public synchronized float getRecentFrameTimeMax() {
+		return recent(FrameTimings.Section.FRAME).getMax();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentFrameJitter()
+	 */
+	public synchronized float getRecentFrameJitter() {
+		return recent(FrameTimings.Section.FRAME).getJitter();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentUpdateTimeP99()
+	 */
+	public synchronized float getRecentUpdateTimeP99() {
+		return recent(FrameTimings.Section.UPDATE).getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentPhysicsTimeP50()
+	 */
+	public synchronized float getRecentPhysicsTimeP50() {
+		return recent(FrameTimings.Section.PHYSICS).getPercentile(50);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentPhysicsTimeP99()
+	 */
+	public synchronized float getRecentPhysicsTimeP99() {
+		return recent(FrameTimings.Section.PHYSICS).getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentRenderTimeP99()
+	 */
+	public synchronized float getRecentRenderTimeP99() {
+		return recent(FrameTimings.Section.RENDER).getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getRecentPassTimes()
+	 */
+	public synchronized String[] getRecentPassTimes() {
+		return getPassTimes(true);
+	}
+
+	/**
+	 * @param recent
+	 *            true for the recent values, false for the values since the start
+	 * @return one entry per render pass: name, p50, p99 and max
+	 */
+	private String[] getPassTimes(final boolean recent) {
+		final List<String> names = timings.getHistogramNames();
+		final String[] result = new String[names.size()];
+		for (int i = 0; i < result.length; i++) {
+			FrameHistogram histogram = timings.getHistogram(names.get(i));
+			if (recent) {
+				HistogramWindow window = recentNamed.get(names.get(i));
+				if (window == null) {
+					window = new HistogramWindow(histogram, RECENT_WINDOW_NANOS);
+					recentNamed.put(names.get(i), window);
+				}
+				histogram = window.getRecent();
+			}
+			result[i] = String.format("%s p50=%.2f p99=%.2f max=%.2f", names.get(i), histogram.getPercentile(50),
+					histogram.getPercentile(99), histogram.getMax());
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getBoxCount()
+	 */
+	public int getBoxCount() {
+		return boxCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getActiveBoxes()
+	 */
+	public int getActiveBoxes() {
+		return activeBoxes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#isSnakeRunning()
+	 */
+	public boolean isSnakeRunning() {
+		return snakeRunning;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#isWaveRunning()
+	 */
+	public boolean isWaveRunning() {
+		return waveRunning;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#isRingsRunning()
+	 */
+	public boolean isRingsRunning() {
+		return ringsRunning;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#isHold()
+	 */
+	public boolean isHold() {
+		return hold;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#isFloorEnabled()
+	 */
+	public boolean isFloorEnabled() {
+		return floorEnabled;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getQualityLevel()
+	 */
+	public int getQualityLevel() {
+		return qualityLevel;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getHeapUsed()
+	 */
+	public long getHeapUsed() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getHeapMax()
+	 */
+	public long getHeapMax() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getGcCount()
+	 */
+	public long getGcCount() {
+		long count = 0;
+		for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, bean.getCollectionCount());
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#getGcTime()
+	 */
+	public long getGcTime() {
+		long time = 0;
+		for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, bean.getCollectionTime());
+		}
+		return time;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.DemoMetricsMBean#resetTimings()
+	 */
+	public synchronized void resetTimings() {
+		timings.reset();
+		for (final HistogramWindow window : recentSections) {
+			window.reset();
+		}
+		for (final HistogramWindow window : recentNamed.values()) {
+			window.reset();
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * JMX interface of {@link DemoMetrics}. All times are in milliseconds. Timings cover the time since the
+ * start or the last reset, the Recent timings the last 10 to 20 seconds.
+ * 
+ * @author mq
+ */
+public interface DemoMetricsMBean {
+
+	/**
+	 * @return number of timed frames
+	 */
+	public long getFrameCount();
+
+	/**
+	 * @return mean frame time
+	 */
+	public float getFrameTimeMean();
+
+	/**
+	 * @return median frame time
+	 */
+	public float getFrameTimeP50();
+
+	/**
+	 * @return 95th percentile of the frame time
+	 */
+	public float getFrameTimeP95();
+
+	/**
+	 * @return 99th percentile of the frame time
+	 */
+	public float getFrameTimeP99();
+
+	/**
+	 * @return longest frame
+	 */
+	public float getFrameTimeMax();
+
+	/**
+	 * @return mean difference between two consecutive frame times
+	 */
+	public float getFrameJitter();
+
+	/**
+	 * @return 99th percentile of the level update time
+	 */
+	public float getUpdateTimeP99();
+
+	/**
+	 * @return median time of the physics steps of a frame
+	 */
+	public float getPhysicsTimeP50();
+
+	/**
+	 * @return 99th percentile of the time of the physics steps of a frame
+	 */
+	public float getPhysicsTimeP99();
+
+	/**
+	 * @return 99th percentile of the render time
+	 */
+	public float getRenderTimeP99();
+
+	/**
+	 * @return one entry per render pass: name, p50, p99 and max
+	 */
+	public String[] getPassTimes();
+
+	/**
+	 * @return number of recently timed frames
+	 */
+	public long getRecentFrameCount();
+
+	/**
+	 * @return recent mean frame time
+	 */
+	public float getRecentFrameTimeMean();
+
+	/**
+	 * @return recent median frame time
+	 */
+	public float getRecentFrameTimeP50();
+
+	/**
+	 * @return recent 95th percentile of the frame time
+	 */
+	public float getRecentFrameTimeP95();
+
+	/**
+	 * @return recent 99th percentile of the frame time
+	 */
+	public float getRecentFrameTimeP99();
+
+	/**
+	 * @return longest recent frame
+	 */
+	public float getRecentFrameTimeMax();
+
+	/**
+	 * @return recent mean difference between two consecutive frame times
+	 */
+	public float getRecentFrameJitter();
+
+	/**
+	 * @return recent 99th percentile of the level update time
+	 */
+	public float getRecentUpdateTimeP99();
+
+	/**
+	 * @return recent median time of the physics steps of a frame
+	 */
+	public float getRecentPhysicsTimeP50();
+
+	/**
+	 * @return recent 99th percentile of the time of the physics steps of a frame
+	 */
+	public float getRecentPhysicsTimeP99();
+
+	/**
+	 * @return recent 99th percentile of the render time
+	 */
+	public float getRecentRenderTimeP99();
+
+	/**
+	 * @return one entry per render pass: name and recent p50, p99 and max
+	 */
+	public String[] getRecentPassTimes();
+
+	/**
+	 * @return number of boxes
+	 */
+	public int getBoxCount();
+
+	/**
+	 * @return number of moving boxes
+	 */
+	public int getActiveBoxes();
+
+	/**
+	 * @return true if the snake is running
+	 */
+	public boolean isSnakeRunning();
+
+	/**
+	 * @return true if the waves are running
+	 */
+	public boolean isWaveRunning();
+
+	/**
+	 * @return true if the rings are running
+	 */
+	public boolean isRingsRunning();
+
+	/**
+	 * @return true if all boxes are held
+	 */
+	public boolean isHold();
+
+	/**
+	 * @return true if the floor is enabled
+	 */
+	public boolean isFloorEnabled();
+
+	/**
+	 * @return current render quality level
+	 */
+	public int getQualityLevel();
+
+	/**
+	 * @return used heap in bytes
+	 */
+	public long getHeapUsed();
+
+	/**
+	 * @return maximum heap in bytes
+	 */
+	public long getHeapMax();
+
+	/**
+	 * @return number of garbage collections since start
+	 */
+	public long getGcCount();
+
+	/**
+	 * @return time spent in garbage collections since start in ms
+	 */
+	public long getGcTime();
+
+	/**
+	 * Forget all recorded timings, the recent ones as well
+	 */
+	public void resetTimings();
+
+}
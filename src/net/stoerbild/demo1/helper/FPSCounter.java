@@ -3,7 +3,8 @@ package net.stoerbild.demo1.helper;
 import com.jme.util.Timer;
 
 /**
- * FPSCounter will calculate averaged fps values
+ * FPSCounter will calculate averaged fps values. The average is the number of frames divided by the
+ * time they took, for percentiles of the frame time see {@link FrameTimings}.
  * 
  * @author mq
  */
@@ -18,7 +19,7 @@ public class FPSCounter {
 	// last average fps
 	private int averageFps = 0;
 
-	private int fpsSum = 0;
+	// frames since last update
 	private int fpsCount = 0;
 
 	/**
@@ -41,15 +42,13 @@ public class FPSCounter {
 		if (timer == null) {
 			return averageFps;
 		}
-		if (lastUpdate > getUpdateRate()) {
-			averageFps = fpsSum / fpsCount;
+		if ((lastUpdate > getUpdateRate()) && (fpsCount > 0)) {
+			averageFps = Math.round(fpsCount / lastUpdate);
 			lastUpdate = 0;
-			fpsSum = 0;
 			fpsCount = 0;
 		}
 		lastUpdate += timer.getTimePerFrame();
 		fpsCount += 1;
-		fpsSum += timer.getFrameRate();
 		return averageFps;
 	}
 
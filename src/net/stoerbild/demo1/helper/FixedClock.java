@@ -0,0 +1,60 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * Simulated clock with a fixed frame time. Time only advances when {@link #tick()} is called, which
+ * makes runs reproducible (e.g. headless profiling).
+ * 
+ * @author mq
+ */
+public class FixedClock implements Clock {
+
+	// fixed time per frame in seconds
+	private final float timePerFrame;
+
+	// simulated frames since start
+	private long frames = 0;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param timePerFrame
+	 *            in seconds
+	 */
+	public FixedClock(final float timePerFrame) {
+		this.timePerFrame = timePerFrame;
+	}
+
+	/**
+	 * Advance the clock by one frame
+	 */
+	public void tick() {
+		frames++;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.Clock#getTimeInSeconds()
+	 */
+	public float getTimeInSeconds() {
+		// multiply instead of summing up to avoid accumulating rounding errors
+		return (float) (frames * (double) timePerFrame);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.Clock#getTimePerFrame()
+	 */
+	public float getTimePerFrame() {
+		return timePerFrame;
+	}
+
+	/**
+	 * @return simulated frames since start
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+}
@@ -0,0 +1,63 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * Accumulator for a fixed simulation timestep. The real frame time is collected and split into
+ * simulation steps of a fixed length; the remaining time is used to interpolate between the last two
+ * steps when drawing. Simulation results are independent of the frame rate this way.
+ * 
+ * @author mq
+ */
+public class FixedTimestep {
+
+	// length of a simulation step in seconds
+	private final float stepTime;
+
+	// frame times are cut to this, so a long frame does not cause a flood of steps
+	private final float maxFrameTime;
+
+	// frame time not yet simulated
+	private float accumulator = 0.0f;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param stepsPerSecond
+	 *            simulation rate
+	 * @param maxFrameTime
+	 *            longest frame time in seconds that is simulated completely
+	 */
+	public FixedTimestep(final float stepsPerSecond, final float maxFrameTime) {
+		assert stepsPerSecond > 0 : "simulation rate must be positive";
+		this.stepTime = 1.0f / stepsPerSecond;
+		this.maxFrameTime = maxFrameTime;
+	}
+
+	/**
+	 * Add the time of a frame
+	 * 
+	 * @param frameTime
+	 *            in seconds
+	 * @return number of simulation steps to do for this frame
+	 */
+	public int advance(final float frameTime) {
+		accumulator += Math.max(0.0f, Math.min(frameTime, maxFrameTime));
+		final int steps = (int) (accumulator / stepTime);
+		accumulator -= steps * stepTime;
+		return steps;
+	}
+
+	/**
+	 * @return how far the frame is between the last and the next simulation step (0 to 1)
+	 */
+	public float getAlpha() {
+		return Math.min(1.0f, accumulator / stepTime);
+	}
+
+	/**
+	 * @return length of a simulation step in seconds
+	 */
+	public float getStepTime() {
+		return stepTime;
+	}
+
+}
@@ -0,0 +1,206 @@
+package net.stoerbild.demo1.helper;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations (frame times, update times ...) with a fixed relative precision. Values are
+ * recorded in microseconds into log-linear buckets: each power of two is split into 32 buckets, so
+ * every recorded value is known to about 3%. Durations from 1 microsecond up to several hours fit
+ * into 1024 buckets.
+ * <p>
+ * Recording is lock free and never allocates, so it can be called every frame from any thread.
+ * Reading while other threads record gives a slightly inconsistent but usable snapshot.
+ * <p>
+ * Besides the percentiles the jitter is tracked, the mean difference between two consecutive values.
+ * A stable 30 fps has no jitter, alternating 10 ms and 40 ms frames have a lot, although both have
+ * the same average.
+ * 
+ * @author mq
+ */
+public class FrameHistogram {
+
+	// 2^5 = 32 buckets per power of two
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// highest power of two (2^35 microseconds = 9.5 hours)
+	private static final int MAX_EXPONENT = 35;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	// for the jitter
+	private final AtomicLong lastValue = new AtomicLong(-1);
+	private final AtomicLong differenceSum = new AtomicLong();
+	private final AtomicLong differenceCount = new AtomicLong();
+
+	/**
+	 * Record a duration
+	 * 
+	 * @param nanos
+	 *            duration in nanoseconds
+	 */
+	public void record(final long nanos) {
+		final long micros = Math.min(Math.max(0, nanos / 1000), MAX_VALUE);
+		buckets.incrementAndGet(getBucket(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+		long currentMax = max.get();
+		while ((micros > currentMax) && !max.compareAndSet(currentMax, micros)) {
+			currentMax = max.get();
+		}
+		final long last = lastValue.getAndSet(micros);
+		if (last >= 0) {
+			differenceSum.addAndGet(Math.abs(micros - last));
+			differenceCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Forget all recorded values
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+		lastValue.set(-1);
+		differenceSum.set(0);
+		differenceCount.set(0);
+	}
+
+	/**
+	 * Copy all values of another histogram, e.g. to keep its state at the start of a time window
+	 * 
+	 * @param source
+	 */
+	public void copyFrom(final FrameHistogram source) {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, source.buckets.get(i));
+		}
+		count.set(source.count.get());
+		sum.set(source.sum.get());
+		max.set(source.max.get());
+		lastValue.set(source.lastValue.get());
+		differenceSum.set(source.differenceSum.get());
+		differenceCount.set(source.differenceCount.get());
+	}
+
+	/**
+	 * Set the values a histogram recorded since a copy of it was taken. The highest value is only
+	 * known to the precision of its bucket then.
+	 * 
+	 * @param current
+	 *            histogram recording values
+	 * @param start
+	 *            copy of the histogram taken earlier, see {@link #copyFrom(FrameHistogram)}
+	 */
+	public void setDifference(final FrameHistogram current, final FrameHistogram start) {
+		// values forgotten by a reset of the histogram since the copy are ignored
+		long total = 0;
+		int highest = -1;
+		for (int i = 0; i < BUCKETS; i++) {
+			final long values = Math.max(0, current.buckets.get(i) - start.buckets.get(i));
+			buckets.set(i, values);
+			total += values;
+			if (values > 0) {
+				highest = i;
+			}
+		}
+		// counted from the buckets, so the percentiles are consistent while current is recording
+		count.set(total);
+		sum.set(Math.max(0, current.sum.get() - start.sum.get()));
+		max.set(highest < 0 ? 0 : Math.min(getBucketEnd(highest), current.max.get()));
+		lastValue.set(current.lastValue.get());
+		differenceSum.set(Math.max(0, current.differenceSum.get() - start.differenceSum.get()));
+		differenceCount.set(Math.max(0, current.differenceCount.get() - start.differenceCount.get()));
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Get the value at a percentile. The result is the highest value of the bucket holding the
+	 * percentile, so it is never lower than the exact value.
+	 * 
+	 * @param percentile
+	 *            0 to 100
+	 * @return value in milliseconds, 0 if nothing has been recorded
+	 */
+	public float getPercentile(final double percentile) {
+		final long total = count.get();
+		if (total == 0) {
+			return 0.0f;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(getBucketEnd(i), max.get()) / 1000.0f;
+			}
+		}
+		return max.get() / 1000.0f;
+	}
+
+	/**
+	 * @return highest value in milliseconds
+	 */
+	public float getMax() {
+		return max.get() / 1000.0f;
+	}
+
+	/**
+	 * @return mean value in milliseconds, 0 if nothing has been recorded
+	 */
+	public float getMean() {
+		final long total = count.get();
+		return total == 0 ? 0.0f : sum.get() / 1000.0f / total;
+	}
+
+	/**
+	 * @return mean difference between two consecutive values in milliseconds
+	 */
+	public float getJitter() {
+		final long total = differenceCount.get();
+		return total == 0 ? 0.0f : differenceSum.get() / 1000.0f / total;
+	}
+
+	/**
+	 * @param micros
+	 *            value in microseconds (0 to {@link #MAX_VALUE})
+	 * @return bucket of the value
+	 */
+	private static int getBucket(final long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		final int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (micros >> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @param bucket
+	 * @return highest value of the bucket in microseconds
+	 */
+	private static long getBucketEnd(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int shift = bucket / SUB_BUCKETS - 1;
+		final long first = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return first + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,135 @@
+package net.stoerbild.demo1.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timings of all frames, split into the sections of a frame. Each section has its own
+ * {@link FrameHistogram}. Further named histograms (e.g. one per render pass) can be added.
+ * 
+ * @author mq
+ */
+public class FrameTimings {
+
+	/**
+	 * Timed parts of a frame
+	 */
+	public enum Section {
+		/** whole frame, from the start of one frame to the start of the next */
+		FRAME,
+		/** level update (input, actions, physics, moving the boxes) */
+		UPDATE,
+		/** physics steps, part of the level update */
+		PHYSICS,
+		/** all render passes */
+		RENDER
+	}
+
+	private final FrameHistogram[] histograms;
+
+	// additional histograms and their names
+	private final List<String> names = new ArrayList<String>();
+	private final List<FrameHistogram> namedHistograms = new ArrayList<FrameHistogram>();
+
+	/**
+	 * Constructor
+	 */
+	public FrameTimings() {
+		histograms = new FrameHistogram[Section.values().length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new FrameHistogram();
+		}
+	}
+
+	/**
+	 * Record the duration of a section
+	 * 
+	 * @param section
+	 * @param nanos
+	 *            duration in nanoseconds
+	 */
+	public void record(final Section section, final long nanos) {
+		histograms[section.ordinal()].record(nanos);
+	}
+
+	/**
+	 * @param section
+	 * @return histogram of the section
+	 */
+	public FrameHistogram getHistogram(final Section section) {
+		return histograms[section.ordinal()];
+	}
+
+	/**
+	 * Add a named histogram. The histogram is part of the report, after the sections.
+	 * 
+	 * @param name
+	 *            unique name of the histogram
+	 * @return the new histogram
+	 */
+	public synchronized FrameHistogram addHistogram(final String name) {
+		if (names.contains(name)) {
+			throw new IllegalArgumentException("Histogram already exists: " + name);
+		}
+		final FrameHistogram histogram = new FrameHistogram();
+		names.add(name);
+		namedHistograms.add(histogram);
+		return histogram;
+	}
+
+	/**
+	 * @param name
+	 * @return named histogram or null if there is none with this name
+	 */
+	public synchronized FrameHistogram getHistogram(final String name) {
+		final int index = names.indexOf(name);
+		return index < 0 ? null : namedHistograms.get(index);
+	}
+
+	/**
+	 * @return names of all added histograms
+	 */
+	public synchronized List<String> getHistogramNames() {
+		return new ArrayList<String>(names);
+	}
+
+	/**
+	 * Forget all recorded timings
+	 */
+	public synchronized void reset() {
+		for (final FrameHistogram histogram : histograms) {
+			histogram.reset();
+		}
+		for (final FrameHistogram histogram : namedHistograms) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * @return one line per section with count, mean, p50, p95, p99, max and jitter (in ms)
+	 */
+	public synchronized String getReport() {
+		final StringBuilder report = new StringBuilder();
+		report.append(String.format("%-16s %8s %8s %8s %8s %8s %8s %8s%n", "section", "count", "mean", "p50",
+				"p95", "p99", "max", "jitter"));
+		for (final Section section : Section.values()) {
+			appendLine(report, section.name().toLowerCase(), getHistogram(section));
+		}
+		for (int i = 0; i < names.size(); i++) {
+			appendLine(report, names.get(i), namedHistograms.get(i));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * @param report
+	 * @param name
+	 * @param histogram
+	 */
+	private static void appendLine(final StringBuilder report, final String name, final FrameHistogram histogram) {
+		report.append(String.format("%-16s %8d %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f%n", name, histogram.getCount(),
+				histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(95), histogram
+						.getPercentile(99), histogram.getMax(), histogram.getJitter()));
+	}
+
+}
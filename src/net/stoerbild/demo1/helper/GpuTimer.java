@@ -0,0 +1,114 @@
+package net.stoerbild.demo1.helper;
+
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.EXTTimerQuery;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * Measures the GPU time of rendering commands with OpenGL timer queries (GL_EXT_timer_query). The
+ * result of a query is only available some frames later, so several queries are used in turn and a
+ * result is read as soon as it is available. The CPU never waits for the GPU: if all queries are
+ * still pending, the frame is not measured.
+ * <p>
+ * Must only be used in the OpenGL thread.
+ * 
+ * @author mq
+ */
+public class GpuTimer {
+
+	// frames a result may lag behind
+	private static final int QUERIES = 4;
+
+	private final FrameHistogram histogram;
+
+	// query ids, created with the first measurement
+	private int[] queries = null;
+	private final boolean[] pending = new boolean[QUERIES];
+	private int next = 0;
+
+	// true between begin and end of a measured frame
+	private boolean running = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param histogram
+	 *            receives the GPU times
+	 */
+	public GpuTimer(final FrameHistogram histogram) {
+		this.histogram = histogram;
+	}
+
+	/**
+	 * @return true if the current OpenGL context supports timer queries
+	 */
+	public static boolean isSupported() {
+		try {
+			final ContextCapabilities capabilities = GLContext.getCapabilities();
+			return (capabilities != null) && capabilities.OpenGL15 && capabilities.GL_EXT_timer_query;
+		} catch (final RuntimeException e) {
+			// no current context
+			return false;
+		}
+	}
+
+	/**
+	 * Start measuring. Only one timer may be running at a time.
+	 */
+	public void begin() {
+		if (queries == null) {
+			queries = new int[QUERIES];
+			for (int i = 0; i < QUERIES; i++) {
+				queries[i] = GL15.glGenQueries();
+			}
+		}
+		collect();
+		if (pending[next]) {
+			// GPU is too far behind, skip this frame
+			return;
+		}
+		GL15.glBeginQuery(EXTTimerQuery.GL_TIME_ELAPSED_EXT, queries[next]);
+		running = true;
+	}
+
+	/**
+	 * Stop measuring
+	 */
+	public void end() {
+		if (!running) {
+			return;
+		}
+		GL15.glEndQuery(EXTTimerQuery.GL_TIME_ELAPSED_EXT);
+		pending[next] = true;
+		next = (next + 1) % QUERIES;
+		running = false;
+	}
+
+	/**
+	 * Record the results of all finished queries
+	 */
+	private void collect() {
+		for (int i = 0; i < QUERIES; i++) {
+			if (pending[i] && (GL15.glGetQueryObjecti(queries[i], GL15.GL_QUERY_RESULT_AVAILABLE) != 0)) {
+				histogram.record(EXTTimerQuery.glGetQueryObjectuEXT(queries[i], GL15.GL_QUERY_RESULT));
+				pending[i] = false;
+			}
+		}
+	}
+
+	/**
+	 * Delete all queries
+	 */
+	public void dispose() {
+		if (queries == null) {
+			return;
+		}
+		for (int i = 0; i < QUERIES; i++) {
+			GL15.glDeleteQueries(queries[i]);
+			pending[i] = false;
+		}
+		queries = null;
+	}
+
+}
@@ -0,0 +1,75 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * The recent values of a {@link FrameHistogram}, which itself keeps all values since the start. A
+ * copy of the histogram is taken whenever the window has passed; the recent values are the values
+ * recorded since the copy before. They cover between one and two windows, more if they are read less
+ * often than once per window.
+ * <p>
+ * Only the reading thread does any work, recording into the histogram is not changed. Reading
+ * allocates nothing; the returned histogram is reused by the next call.
+ * 
+ * @author mq
+ */
+public class HistogramWindow {
+
+	private final FrameHistogram source;
+	private final long windowNanos;
+
+	// copies of the source at the start of the previous and the current window
+	private FrameHistogram older = new FrameHistogram();
+	private FrameHistogram newer = new FrameHistogram();
+	// System.nanoTime of the newer copy
+	private long newerTime;
+
+	// values recorded since the older copy
+	private final FrameHistogram recent = new FrameHistogram();
+
+	/**
+	 * Constructor. Until the first window has passed, the recent values are all values of the source.
+	 * 
+	 * @param source
+	 *            histogram recording the values
+	 * @param windowNanos
+	 *            length of a window in nanoseconds
+	 */
+	public HistogramWindow(final FrameHistogram source, final long windowNanos) {
+		this.source = source;
+		this.windowNanos = windowNanos;
+		newerTime = System.nanoTime();
+	}
+
+	/**
+	 * @return values of the last one to two windows, valid until the next call
+	 */
+	public FrameHistogram getRecent() {
+		return getRecent(System.nanoTime());
+	}
+
+	/**
+	 * @param now
+	 *            System.nanoTime
+	 * @return values of the last one to two windows, valid until the next call
+	 */
+	synchronized FrameHistogram getRecent(final long now) {
+		if (now - newerTime >= windowNanos) {
+			final FrameHistogram oldest = older;
+			older = newer;
+			newer = oldest;
+			newer.copyFrom(source);
+			newerTime = now;
+		}
+		recent.setDifference(source, older);
+		return recent;
+	}
+
+	/**
+	 * Forget the copies, called when the source is reset
+	 */
+	public synchronized void reset() {
+		older.reset();
+		newer.reset();
+		newerTime = System.nanoTime();
+	}
+
+}
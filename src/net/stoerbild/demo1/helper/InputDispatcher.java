@@ -0,0 +1,171 @@
+package net.stoerbild.demo1.helper;
+
+import com.jme.input.KeyInputListener;
+
+/**
+ * Collects key events and dispatches them once per frame to handlers registered by key code. Events
+ * are kept in a fixed ring of ints, handlers in an array indexed by the key code, so a frame without
+ * key events costs nothing but the check of an empty queue.
+ * <p>
+ * The dispatcher is registered at {@link com.jme.input.KeyInput#addListener(KeyInputListener)}, or
+ * fed with synthetic events through {@link #onKey(char, int, boolean)} (e.g. without a display).
+ * 
+ * @author mq
+ */
+public class InputDispatcher implements KeyInputListener {
+
+	// key codes of KeyInput are below 256
+	private static final int KEY_COUNT = 256;
+	// events of one frame, more presses are dropped
+	private static final int QUEUE_SIZE = 64;
+
+	private final KeyHandler[] handlers = new KeyHandler[KEY_COUNT];
+	private final boolean[] repeating = new boolean[KEY_COUNT];
+	private final boolean[] down = new boolean[KEY_COUNT];
+
+	// queued events: key code shifted by one, lowest bit set if pressed
+	private final int[] events = new int[QUEUE_SIZE];
+	private int first = 0;
+	private int count = 0;
+	// keys released while the queue was full, released after the queued events
+	private final boolean[] lateRelease = new boolean[KEY_COUNT];
+	private boolean lateReleases = false;
+
+	// held keys with a repeating handler, and whether they were pressed in the current frame
+	private final int[] held = new int[KEY_COUNT];
+	private int heldCount = 0;
+	private final boolean[] pressedNow = new boolean[KEY_COUNT];
+
+	/**
+	 * Register a handler for a key, replaces the handler registered before
+	 * 
+	 * @param keyCode
+	 *            see {@link com.jme.input.KeyInput}
+	 * @param handler
+	 * @param repeat
+	 *            true to call the handler every frame while the key is held
+	 */
+	public void register(final int keyCode, final KeyHandler handler, final boolean repeat) {
+		handlers[keyCode] = handler;
+		repeating[keyCode] = repeat;
+	}
+
+	/**
+	 * Remove the handler of a key
+	 * 
+	 * @param keyCode
+	 */
+	public void unregister(final int keyCode) {
+		handlers[keyCode] = null;
+		repeating[keyCode] = false;
+		removeHeld(keyCode);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.input.KeyInputListener#onKey(char, int, boolean)
+	 */
+	public void onKey(final char character, final int keyCode, final boolean pressed) {
+		if ((keyCode < 0) || (keyCode >= KEY_COUNT)) {
+			return;
+		}
+		if (count == QUEUE_SIZE) {
+			// a lost press is only a missed action, a lost release would leave the key held
+			if (!pressed) {
+				lateRelease[keyCode] = true;
+				lateReleases = true;
+			}
+			return;
+		}
+		events[(first + count) % QUEUE_SIZE] = (keyCode << 1) | (pressed ? 1 : 0);
+		count++;
+	}
+
+	/**
+	 * Call the handlers of all keys pressed since the last call, and of all held repeating keys. Call
+	 * once per frame.
+	 */
+	public void dispatch() {
+		while (count > 0) {
+			final int event = events[first];
+			first = (first + 1) % QUEUE_SIZE;
+			count--;
+			final int keyCode = event >> 1;
+			if ((event & 1) == 0) {
+				down[keyCode] = false;
+				removeHeld(keyCode);
+				continue;
+			}
+			if (down[keyCode]) {
+				// repeated by the keyboard
+				continue;
+			}
+			down[keyCode] = true;
+			final KeyHandler handler = handlers[keyCode];
+			if (handler == null) {
+				continue;
+			}
+			handler.keyPressed(keyCode);
+			if (repeating[keyCode]) {
+				held[heldCount++] = keyCode;
+				pressedNow[keyCode] = true;
+			}
+		}
+		if (lateReleases) {
+			releaseLate();
+		}
+		for (int i = 0; i < heldCount; i++) {
+			final int keyCode = held[i];
+			if (pressedNow[keyCode]) {
+				pressedNow[keyCode] = false;
+			} else {
+				handlers[keyCode].keyPressed(keyCode);
+			}
+		}
+	}
+
+	/**
+	 * Release the keys released while the queue was full
+	 */
+	private void releaseLate() {
+		for (int keyCode = 0; keyCode < KEY_COUNT; keyCode++) {
+			if (lateRelease[keyCode]) {
+				lateRelease[keyCode] = false;
+				down[keyCode] = false;
+				removeHeld(keyCode);
+			}
+		}
+		lateReleases = false;
+	}
+
+	/**
+	 * @param keyCode
+	 *            key no longer held
+	 */
+	private void removeHeld(final int keyCode) {
+		for (int i = 0; i < heldCount; i++) {
+			if (held[i] == keyCode) {
+				held[i] = held[--heldCount];
+				pressedNow[keyCode] = false;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Forget all queued events and held keys, e.g. when the dispatcher is not listening anymore
+	 */
+	public void clear() {
+		first = 0;
+		count = 0;
+		heldCount = 0;
+		lateReleases = false;
+		for (int i = 0; i < KEY_COUNT; i++) {
+			down[i] = false;
+			pressedNow[i] = false;
+			lateRelease[i] = false;
+		}
+	}
+
+}
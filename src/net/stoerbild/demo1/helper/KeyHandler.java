@@ -0,0 +1,19 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * Handles a key registered at an {@link InputDispatcher}
+ * 
+ * @author mq
+ */
+public interface KeyHandler {
+
+	/**
+	 * Called when the key is pressed, and every frame while it is held if the handler was registered
+	 * as repeating
+	 * 
+	 * @param keyCode
+	 *            see {@link com.jme.input.KeyInput}
+	 */
+	void keyPressed(int keyCode);
+
+}
@@ -0,0 +1,17 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * A scene that knows when its shadow occluders change, so the {@link CachedShadowPass} only
+ * collects them again after a change
+ * 
+ * @author mq
+ */
+public interface OccluderSource {
+
+	/**
+	 * @return a number changing whenever a mesh of the scene starts or stops casting shadows, or a
+	 *         mesh casting shadows is attached or detached
+	 */
+	public long getOccluderVersion();
+
+}
@@ -0,0 +1,167 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * Adapts the render quality to a frame time budget. The frame times of each evaluation window (one
+ * second) are collected, and the 95th percentile decides:
+ * <ul>
+ * <li>over budget for {@link #DOWNGRADE_WINDOWS} windows in a row: one level down</li>
+ * <li>below {@link #UPGRADE_RATIO} of the budget for enough windows in a row: one level up</li>
+ * </ul>
+ * The gap between both thresholds and the different number of windows keep the quality from
+ * flapping. If a level has to be left again right after an upgrade, the next upgrade waits twice as
+ * long.
+ * 
+ * @author mq
+ */
+public class QualityController {
+
+	// length of an evaluation window in seconds
+	private static final float WINDOW = 1.0f;
+	// bad windows before going down
+	private static final int DOWNGRADE_WINDOWS = 2;
+	// good windows before going up (doubled after each flap)
+	private static final int UPGRADE_WINDOWS = 5;
+	private static final int MAX_UPGRADE_WINDOWS = 60;
+	// a window is good if the frame time is below this part of the budget
+	private static final float UPGRADE_RATIO = 0.75f;
+	// percentile of the frame time compared to the budget
+	private static final double PERCENTILE = 95.0;
+
+	private final int levels;
+	private final float budget;
+	private final QualityListener listener;
+
+	private int level;
+
+	// frame times of the current window
+	private final FrameHistogram window = new FrameHistogram();
+	private float windowTime = 0.0f;
+
+	private int badWindows = 0;
+	private int goodWindows = 0;
+	private int upgradeWindows = UPGRADE_WINDOWS;
+	// windows since the last upgrade, -1 if the last change was a downgrade
+	private int windowsSinceUpgrade = -1;
+
+	private boolean enabled = true;
+
+	/**
+	 * Constructor. The listener is called with the initial level.
+	 * 
+	 * @param levels
+	 *            number of quality levels
+	 * @param initialLevel
+	 * @param budget
+	 *            frame time budget in seconds
+	 * @param listener
+	 *            applies the quality levels
+	 */
+	public QualityController(final int levels, final int initialLevel, final float budget,
+			final QualityListener listener) {
+		this.levels = levels;
+		this.budget = budget;
+		this.listener = listener;
+		level = Math.max(0, Math.min(levels - 1, initialLevel));
+		listener.setQuality(level);
+	}
+
+	/**
+	 * Record a frame and change the quality if needed
+	 * 
+	 * @param frameNanos
+	 *            duration of the frame in nanoseconds
+	 */
+	public void frame(final long frameNanos) {
+		if (!enabled) {
+			return;
+		}
+		window.record(frameNanos);
+		windowTime += frameNanos / 1.0e9f;
+		if (windowTime < WINDOW) {
+			return;
+		}
+		final float frameTime = window.getPercentile(PERCENTILE) / 1000.0f;
+		window.reset();
+		windowTime = 0.0f;
+		if (windowsSinceUpgrade >= 0) {
+			windowsSinceUpgrade++;
+		}
+
+		if (frameTime > budget) {
+			goodWindows = 0;
+			if ((++badWindows >= DOWNGRADE_WINDOWS) && (level > 0)) {
+				if ((windowsSinceUpgrade >= 0) && (windowsSinceUpgrade <= DOWNGRADE_WINDOWS + 1)) {
+					// the upgrade did not work out, wait longer next time
+					upgradeWindows = Math.min(MAX_UPGRADE_WINDOWS, upgradeWindows * 2);
+				}
+				windowsSinceUpgrade = -1;
+				changeLevel(level - 1);
+			}
+		} else if (frameTime < budget * UPGRADE_RATIO) {
+			badWindows = 0;
+			if ((++goodWindows >= upgradeWindows) && (level < levels - 1)) {
+				windowsSinceUpgrade = 0;
+				changeLevel(level + 1);
+			}
+		} else {
+			// within the budget, stay
+			badWindows = 0;
+			goodWindows = 0;
+		}
+	}
+
+	/**
+	 * @param newLevel
+	 */
+	private void changeLevel(final int newLevel) {
+		level = newLevel;
+		badWindows = 0;
+		goodWindows = 0;
+		listener.setQuality(level);
+	}
+
+	/**
+	 * @return current quality level
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Set the quality level manually
+	 * 
+	 * @param newLevel
+	 */
+	public void setLevel(final int newLevel) {
+		windowsSinceUpgrade = -1;
+		changeLevel(Math.max(0, Math.min(levels - 1, newLevel)));
+	}
+
+	/**
+	 * @return number of quality levels
+	 */
+	public int getLevelCount() {
+		return levels;
+	}
+
+	/**
+	 * @return true if the quality is adapted automatically
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enable/disable automatic quality changes
+	 * 
+	 * @param enabled
+	 */
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+		window.reset();
+		windowTime = 0.0f;
+		badWindows = 0;
+		goodWindows = 0;
+	}
+
+}
@@ -0,0 +1,18 @@
+package net.stoerbild.demo1.helper;
+
+/**
+ * Receives quality changes of a {@link QualityController}
+ * 
+ * @author mq
+ */
+public interface QualityListener {
+
+	/**
+	 * Switch to another quality level
+	 * 
+	 * @param level
+	 *            new level, 0 is the lowest quality
+	 */
+	public void setQuality(int level);
+
+}
@@ -0,0 +1,112 @@
+package net.stoerbild.demo1.helper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache bounded by the size of its values in bytes. If adding a value exceeds the
+ * bound, the values not used for the longest time are dropped. Thread safe.
+ * 
+ * @author mq
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            value type
+ */
+public class ResourceCache<K, V> {
+
+	/**
+	 * Cached value and its size
+	 */
+	private static final class Entry<V> {
+		final V value;
+		final long size;
+
+		Entry(final V value, final long size) {
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	private final long maxBytes;
+	private long bytes = 0;
+
+	// access order: the first entry is the least recently used one
+	private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+
+	/**
+	 * Constructor
+	 * 
+	 * @param maxBytes
+	 *            maximum size of all cached values in bytes
+	 */
+	public ResourceCache(final long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param key
+	 * @return cached value or null, the value becomes the most recently used one
+	 */
+	public synchronized V get(final K key) {
+		final Entry<V> entry = entries.get(key);
+		return entry != null ? entry.value : null;
+	}
+
+	/**
+	 * Add a value and drop the least recently used values until the cache fits its bound again. Values
+	 * larger than the whole cache are not cached.
+	 * 
+	 * @param key
+	 * @param value
+	 * @param size
+	 *            of the value in bytes
+	 */
+	public synchronized void put(final K key, final V value, final long size) {
+		final Entry<V> old = entries.remove(key);
+		if (old != null) {
+			bytes -= old.size;
+		}
+		if (size > maxBytes) {
+			return;
+		}
+		entries.put(key, new Entry<V>(value, size));
+		bytes += size;
+		final Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+		while (bytes > maxBytes) {
+			bytes -= eldest.next().getValue().size;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drop all values
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return number of cached values
+	 */
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return size of all cached values in bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return maximum size of all cached values in bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+}
@@ -0,0 +1,32 @@
+package net.stoerbild.demo1.helper;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Decodes a resource, called by {@link ResourceManager} on one of its loader threads. Loaders must
+ * not use the OpenGL or OpenAL context of the render thread.
+ * 
+ * @author mq
+ * @param <T>
+ *            type of the decoded resource
+ */
+public interface ResourceLoader<T> {
+
+	/**
+	 * @param url
+	 *            location of the resource
+	 * @return the decoded resource
+	 * @throws IOException
+	 *             if the resource can not be read or decoded
+	 */
+	T load(URL url) throws IOException;
+
+	/**
+	 * @param resource
+	 *            decoded resource
+	 * @return memory used by the resource in bytes (estimated)
+	 */
+	long getSize(T resource);
+
+}
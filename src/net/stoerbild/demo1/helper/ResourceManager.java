@@ -1,14 +1,123 @@
 package net.stoerbild.demo1.helper;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.jme.image.Image;
+import com.jme.image.Texture;
+import com.jme.util.TextureKey;
+import com.jme.util.TextureManager;
 
 /**
  * Resource Manager uses Classloder for loading resources
+ * <p>
+ * An instance also decodes resources on a pool of background threads and keeps the decoded resources
+ * in a {@link ResourceCache}. Levels start loading everything they need with
+ * {@link #load(String, ResourceLoader)} and get the decoded resources later without waiting.
+ * 
  * @author mq
- *
  */
 public class ResourceManager {
 
+	/** decodes an image file, the image is flipped like the images of {@link TextureManager} */
+	public static final ResourceLoader<Image> IMAGE = new ResourceLoader<Image>() {
+
+		public Image load(final URL url) throws IOException {
+			final Image image = TextureManager.loadImage(url, true);
+			if (image == null) {
+				throw new IOException("Can not decode image " + url);
+			}
+			return image;
+		}
+
+		public long getSize(final Image image) {
+			long size = 0;
+			for (final ByteBuffer data : image.getData()) {
+				size += data.capacity();
+			}
+			return size;
+		}
+	};
+
+	/** reads the raw bytes of a file */
+	public static final ResourceLoader<byte[]> BYTES = new ResourceLoader<byte[]>() {
+
+		public byte[] load(final URL url) throws IOException {
+			final InputStream in = url.openStream();
+			try {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				final byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) >= 0) {
+					out.write(buffer, 0, read);
+				}
+				return out.toByteArray();
+			} finally {
+				in.close();
+			}
+		}
+
+		public long getSize(final byte[] bytes) {
+			return bytes.length;
+		}
+	};
+
+	/**
+	 * A resource decoded by a loader, the same file may be decoded by different loaders
+	 */
+	private static final class Key {
+		final String name;
+		final ResourceLoader<?> loader;
+
+		Key(final String name, final ResourceLoader<?> loader) {
+			this.name = name;
+			this.loader = loader;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return name.equals(other.name) && (loader == other.loader);
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode() * 31 + System.identityHashCode(loader);
+		}
+	}
+
+	private final ExecutorService pool;
+	private final ResourceCache<Key, Object> cache;
+
+	// resources being decoded, a resource requested twice is only decoded once
+	private final ConcurrentHashMap<Key, Future<?>> pending = new ConcurrentHashMap<Key, Future<?>>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param threads
+	 *            number of loader threads
+	 * @param cacheBytes
+	 *            maximum size of all cached resources in bytes
+	 */
+	public ResourceManager(final int threads, final long cacheBytes) {
+		pool = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("resource-loader"));
+		cache = new ResourceCache<Key, Object>(cacheBytes);
+	}
+
 	/**
 	 * Load and return resource
 	 * 
@@ -19,4 +128,119 @@ public class ResourceManager {
 		return ResourceManager.class.getClassLoader().getResource(name);
 	}
 
+	/**
+	 * Start decoding a resource in the background. Cached resources are returned immediately.
+	 * 
+	 * @param <T>
+	 *            type of the decoded resource
+	 * @param name
+	 *            of the resource (see {@link net.stoerbild.demo1.resources.Resources})
+	 * @param loader
+	 *            decodes the resource
+	 * @return the decoded resource, when done
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Future<T> load(final String name, final ResourceLoader<T> loader) {
+		final Key key = new Key(name, loader);
+		final T cached = (T) cache.get(key);
+		if (cached != null) {
+			final FutureTask<T> done = new FutureTask<T>(new Callable<T>() {
+
+				public T call() {
+					return cached;
+				}
+			});
+			done.run();
+			return done;
+		}
+		final FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+
+			public T call() throws IOException {
+				try {
+					final URL url = getResource(name);
+					if (url == null) {
+						throw new IOException("Resource not found: " + name);
+					}
+					final T resource = loader.load(url);
+					cache.put(key, resource, loader.getSize(resource));
+					return resource;
+				} finally {
+					pending.remove(key);
+				}
+			}
+		});
+		final Future<?> running = pending.putIfAbsent(key, task);
+		if (running != null) {
+			return (Future<T>) running;
+		}
+		pool.execute(task);
+		return task;
+	}
+
+	/**
+	 * Get a decoded resource, waits if it is still being decoded
+	 * 
+	 * @param <T>
+	 *            type of the decoded resource
+	 * @param name
+	 *            of the resource
+	 * @param loader
+	 *            decodes the resource
+	 * @return the decoded resource
+	 * @throws IOException
+	 *             if the resource can not be read or decoded
+	 */
+	public <T> T get(final String name, final ResourceLoader<T> loader) throws IOException {
+		final Future<T> future = load(name, loader);
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + name);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Can not load " + name + ": " + e.getCause());
+		}
+	}
+
+	/**
+	 * Create a texture from a decoded image. Must be called from the render thread, the image should
+	 * have been loaded before with {@link #load(String, ResourceLoader)} and {@link #IMAGE}.
+	 * 
+	 * @param name
+	 *            of the image
+	 * @param minFilter
+	 * @param magFilter
+	 * @return the texture, the default texture if the image can not be loaded
+	 */
+	public Texture getTexture(final String name, final Texture.MinificationFilter minFilter,
+			final Texture.MagnificationFilter magFilter) {
+		final URL url = getResource(name);
+		try {
+			final Image image = get(name, IMAGE);
+			return TextureManager.loadTexture(null, new TextureKey(url, true, Image.Format.Guess), image,
+					minFilter, magFilter, 0.0f);
+		} catch (final IOException e) {
+			System.err.println("Can not load texture: " + e.getMessage());
+			return TextureManager.loadTexture(url, minFilter, magFilter);
+		}
+	}
+
+	/**
+	 * @return cache of the decoded resources
+	 */
+	public ResourceCache<?, ?> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Stop the loader threads, resources still being decoded are dropped
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+		cache.clear();
+	}
+
 }
@@ -0,0 +1,123 @@
+package net.stoerbild.demo1.helper;
+
+import com.jme.renderer.Renderer;
+import com.jme.renderer.pass.Pass;
+
+/**
+ * Decorator for a render pass that records how long the pass takes each frame. The CPU time (issuing
+ * the rendering commands) is always recorded, the GPU time if timer queries are supported by the
+ * graphics card. Both go into {@link FrameTimings} as "name.cpu" and "name.gpu".
+ * <p>
+ * Enabling/disabling the timed pass enables/disables the wrapped pass.
+ * 
+ * @author mq
+ */
+public class TimedPass extends Pass {
+
+	private static final long serialVersionUID = 5108394856205737394L;
+
+	private final Pass pass;
+
+	private final FrameHistogram cpuTime;
+	private final FrameHistogram gpuTime;
+
+	// null if timer queries are not supported
+	private final GpuTimer gpuTimer;
+
+	/**
+	 * Constructor. Must be called in the OpenGL thread to find out if GPU timing is possible.
+	 * 
+	 * @param name
+	 *            of the pass in the timings
+	 * @param pass
+	 *            the timed pass
+	 * @param timings
+	 *            receives the times of the pass
+	 */
+	public TimedPass(final String name, final Pass pass, final FrameTimings timings) {
+		this.pass = pass;
+		cpuTime = timings.addHistogram(name + ".cpu");
+		if (GpuTimer.isSupported()) {
+			gpuTime = timings.addHistogram(name + ".gpu");
+			gpuTimer = new GpuTimer(gpuTime);
+		} else {
+			gpuTime = null;
+			gpuTimer = null;
+		}
+		setEnabled(pass.isEnabled());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.renderer.pass.Pass#doRender(com.jme.renderer.Renderer)
+	 */
+	@Override
+	protected void doRender(final Renderer r) {
+		final long start = System.nanoTime();
+		if (gpuTimer != null) {
+			gpuTimer.begin();
+		}
+		pass.renderPass(r);
+		if (gpuTimer != null) {
+			gpuTimer.end();
+		}
+		cpuTime.record(System.nanoTime() - start);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.renderer.pass.Pass#doUpdate(float)
+	 */
+	@Override
+	protected void doUpdate(final float tpf) {
+		pass.updatePass(tpf);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.renderer.pass.Pass#setEnabled(boolean)
+	 */
+	@Override
+	public void setEnabled(final boolean enabled) {
+		super.setEnabled(enabled);
+		pass.setEnabled(enabled);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.renderer.pass.Pass#cleanUp()
+	 */
+	@Override
+	public void cleanUp() {
+		pass.cleanUp();
+		if (gpuTimer != null) {
+			gpuTimer.dispose();
+		}
+	}
+
+	/**
+	 * @return the timed pass
+	 */
+	public Pass getPass() {
+		return pass;
+	}
+
+	/**
+	 * @return CPU time of the pass
+	 */
+	public FrameHistogram getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * @return GPU time of the pass or null if not supported
+	 */
+	public FrameHistogram getGpuTime() {
+		return gpuTime;
+	}
+
+}
@@ -0,0 +1,42 @@
+package net.stoerbild.demo1.helper;
+
+import com.jme.util.Timer;
+
+/**
+ * Clock backed by the jME timer
+ * 
+ * @author mq
+ */
+public class TimerClock implements Clock {
+
+	private final Timer timer;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param timer
+	 */
+	public TimerClock(final Timer timer) {
+		assert timer != null : "timer is not initialized";
+		this.timer = timer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.Clock#getTimeInSeconds()
+	 */
+	public float getTimeInSeconds() {
+		return timer.getTimeInSeconds();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.stoerbild.demo1.helper.Clock#getTimePerFrame()
+	 */
+	public float getTimePerFrame() {
+		return timer.getTimePerFrame();
+	}
+
+}
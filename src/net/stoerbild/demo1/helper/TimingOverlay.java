@@ -0,0 +1,80 @@
+package net.stoerbild.demo1.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jme.renderer.ColorRGBA;
+import com.jme.renderer.Renderer;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+import com.jme.scene.Text;
+
+/**
+ * On-screen table of the {@link FrameTimings} report. The text is only rebuilt once per update
+ * interval, so the overlay costs almost nothing in between. Attach it to an ortho node (e.g. the
+ * stat node of the game).
+ * 
+ * @author mq
+ */
+public class TimingOverlay extends Node {
+
+	private static final long serialVersionUID = -2871954736408835523L;
+
+	// distance between two lines in pixels
+	private static final float LINE_HEIGHT = 16.0f;
+
+	private final FrameTimings timings;
+
+	// update interval in seconds
+	private final float updateRate;
+	private float lastUpdate;
+
+	private final List<Text> lines = new ArrayList<Text>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param timings
+	 *            shown timings
+	 * @param updateRate
+	 *            update interval in seconds
+	 * @param top
+	 *            y-position of the first line in pixels
+	 */
+	public TimingOverlay(final FrameTimings timings, final float updateRate, final float top) {
+		super("timingOverlay");
+		this.timings = timings;
+		this.updateRate = updateRate;
+		lastUpdate = updateRate;
+		getLocalTranslation().set(0, top, 0);
+		setRenderQueueMode(Renderer.QUEUE_ORTHO);
+		setCullHint(Spatial.CullHint.Never);
+	}
+
+	/**
+	 * Rebuild the text if the update interval has passed
+	 * 
+	 * @param tpf
+	 *            time per frame in seconds
+	 */
+	public void update(final float tpf) {
+		lastUpdate += tpf;
+		if (lastUpdate < updateRate) {
+			return;
+		}
+		lastUpdate = 0;
+		final String[] report = timings.getReport().split("\n");
+		while (lines.size() < report.length) {
+			final Text line = Text.createDefaultTextLabel("timingLine" + lines.size());
+			line.setTextColor(ColorRGBA.white);
+			line.getLocalTranslation().set(0, -LINE_HEIGHT * lines.size(), 0);
+			attachChild(line);
+			lines.add(line);
+		}
+		for (int i = 0; i < lines.size(); i++) {
+			lines.get(i).print(i < report.length ? report[i].trim() : "");
+		}
+		updateRenderState();
+	}
+
+}
@@ -15,6 +15,6 @@ public class Resources {
 
 	// Music
 	private static final String MUSIC_FOLDER = RESOURCE_FOLDER + "music/";
-	public static final String MUSIC_CASIO_PAYA_MP3 = MUSIC_FOLDER + "Casio-Paya.wav";
+	public static final String MUSIC_CASIO_PAYA_WAV = MUSIC_FOLDER + "Casio-Paya.wav";
 
 }
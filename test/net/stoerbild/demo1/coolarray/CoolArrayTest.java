@@ -0,0 +1,71 @@
+package net.stoerbild.demo1.coolarray;
+
+import static org.junit.Assert.assertEquals;
+import net.stoerbild.demo1.helper.FixedClock;
+
+import org.junit.Test;
+
+import com.jme.math.Vector3f;
+
+/**
+ * Tests of the scene graph built by {@link CoolArray}. Runs without a display: render states are only
+ * created with {@link CoolArray#createRenderStates(com.jme.renderer.Renderer)}.
+ * 
+ * @author mq
+ */
+public class CoolArrayTest {
+
+	private static final float STEP_TIME = 1.0f / 120.0f;
+
+	/**
+	 * Every box is drawn on its own
+	 */
+	@Test
+	public void boxesDrawEveryBox() {
+		final CoolArray array = createArray(20, 20, CoolArray.RenderMode.BOXES);
+		assertEquals(400, array.getBatchCount());
+	}
+
+	/**
+	 * The batched mesh draws the whole array at once, no matter how large it is
+	 */
+	@Test
+	public void batchedDrawsOneMesh() {
+		assertEquals(1, createArray(20, 20, CoolArray.RenderMode.BATCHED).getBatchCount());
+		assertEquals(1, createArray(100, 60, CoolArray.RenderMode.BATCHED).getBatchCount());
+	}
+
+	/**
+	 * Tiles far from the camera draw their heightfield instead of their boxes
+	 */
+	@Test
+	public void farTilesDrawOneMesh() {
+		// 3x3 tiles
+		final CoolArray array = createArray(40, 40, CoolArray.RenderMode.LOD);
+		array.updateLod(new Vector3f(50, 20, 50));
+		array.updateGeometricState(0.0f, true);
+		assertEquals(1600, array.getBatchCount());
+
+		array.updateLod(new Vector3f(10000, 0, 10000));
+		array.updateGeometricState(0.0f, true);
+		assertEquals(9, array.getBatchCount());
+
+		// and back
+		array.updateLod(new Vector3f(50, 20, 50));
+		array.updateGeometricState(0.0f, true);
+		assertEquals(1600, array.getBatchCount());
+	}
+
+	/**
+	 * @param xSize
+	 * @param zSize
+	 * @param renderMode
+	 * @return a new array with a world bound
+	 */
+	private static CoolArray createArray(final int xSize, final int zSize, final CoolArray.RenderMode renderMode) {
+		final CoolArray array = new CoolArray("test", xSize, zSize, new FixedClock(STEP_TIME), renderMode);
+		array.updateGeometricState(0.0f, true);
+		return array;
+	}
+
+}
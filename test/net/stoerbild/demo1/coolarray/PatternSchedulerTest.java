@@ -0,0 +1,112 @@
+package net.stoerbild.demo1.coolarray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import net.stoerbild.demo1.helper.FixedClock;
+
+import org.junit.Test;
+
+/**
+ * Tests of the step timing of {@link PatternScheduler}. The scheduler must step a pattern at exactly
+ * the frames of a check of <code>now - lastStep &gt; interval</code> in every frame, the timing of the
+ * actions of the array before the scheduler.
+ * 
+ * @author mq
+ */
+public class PatternSchedulerTest {
+
+	private static final float STEP_TIME = 1.0f / 60.0f;
+	private static final int FRAMES = 20000;
+
+	/**
+	 * Pushes box 0 in every step
+	 */
+	private static class OneBoxPattern implements Pattern {
+		private final float stepInterval;
+
+		OneBoxPattern(final float stepInterval) {
+			this.stepInterval = stepInterval;
+		}
+
+		public float getStepInterval() {
+			return stepInterval;
+		}
+
+		public int getStepCount() {
+			return 7;
+		}
+
+		public void selectBoxes(final int step, final PushBatch batch) {
+			batch.add(0);
+		}
+	}
+
+	/**
+	 * Patterns started at the beginning
+	 */
+	@Test
+	public void startedAtBeginning() {
+		assertTiming(0.05f, 0, -1);
+		assertTiming(0.1f, 0, -1);
+		assertTiming(0.07f, 0, -1);
+	}
+
+	/**
+	 * Patterns started later, the first step is done with the next update
+	 */
+	@Test
+	public void startedLater() {
+		assertTiming(0.05f, 123, -1);
+		assertTiming(0.1f, 1001, -1);
+	}
+
+	/**
+	 * A pattern stopped and started again keeps its timing
+	 */
+	@Test
+	public void restarted() {
+		assertTiming(0.1f, 0, 500);
+		assertTiming(0.1f, 10, 3001);
+		assertTiming(0.05f, 0, 7777);
+	}
+
+	/**
+	 * Run a pattern with the scheduler and with the reference check, both must step in the same frames
+	 * 
+	 * @param stepInterval
+	 * @param startFrame
+	 *            frame the pattern is started
+	 * @param restartFrame
+	 *            frame the pattern is stopped and started again at once, -1 for never
+	 */
+	private static void assertTiming(final float stepInterval, final int startFrame, final int restartFrame) {
+		final FixedClock clock = new FixedClock(STEP_TIME);
+		final PatternScheduler scheduler = new PatternScheduler(clock);
+		final Pattern pattern = new OneBoxPattern(stepInterval);
+		final PushBatch batch = new PushBatch(1);
+
+		boolean running = false;
+		float lastStep = 0.0f;
+		int steps = 0;
+		for (int frame = 0; frame < FRAMES; frame++) {
+			if ((frame == startFrame) || (frame == restartFrame)) {
+				scheduler.stop(pattern);
+				scheduler.start(pattern);
+				running = true;
+			}
+			clock.tick();
+			scheduler.update(batch);
+
+			final float now = clock.getTimeInSeconds();
+			final boolean expected = running && ((now - lastStep) > stepInterval);
+			if (expected) {
+				lastStep = now;
+				steps++;
+			}
+			assertEquals("step in frame " + frame, expected ? 1 : 0, batch.getCount());
+			batch.clear();
+		}
+		assertTrue(steps > FRAMES * STEP_TIME / stepInterval / 2);
+	}
+
+}
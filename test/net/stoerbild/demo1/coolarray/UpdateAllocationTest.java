@@ -0,0 +1,251 @@
+package net.stoerbild.demo1.coolarray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+
+import net.stoerbild.demo1.helper.CommandServer;
+import net.stoerbild.demo1.helper.DemoMetrics;
+import net.stoerbild.demo1.helper.FixedClock;
+import net.stoerbild.demo1.helper.FixedTimestep;
+import net.stoerbild.demo1.helper.FrameTimings;
+import net.stoerbild.demo1.helper.InputDispatcher;
+import net.stoerbild.demo1.helper.KeyHandler;
+
+import org.junit.Test;
+
+import com.jme.input.KeyInput;
+import com.jme.math.Vector3f;
+
+/**
+ * The per-frame update of the level must not allocate once it runs steadily: the same calls as
+ * <code>DemoLevel.update</code> (key events, remote commands, LOD switch, fixed timestep
+ * simulation, frame timings, metrics) and the world data update of the scene graph. The command
+ * server is never started, so polling finds no commands. Allocations are measured with the
+ * allocation counter of the current thread.
+ * <p>
+ * A round of frames runs every action and switches every tile between boxes and heightfield, so an
+ * allocation of the update path shows up in every round. After the warm-up, several rounds in a row
+ * must not allocate a single byte.
+ * 
+ * @author mq
+ */
+public class UpdateAllocationTest {
+
+	private static final float STEPS_PER_SECOND = 120.0f;
+	// frame time of the render thread, two physics steps per frame
+	private static final float FRAME_TIME = 1.0f / 60.0f;
+
+	// frames of a round: the camera moves away and back once, all actions run
+	private static final int ROUND_FRAMES = 2000;
+	// rounds before measuring: classes loaded, code compiled, lazily created meshes exist
+	private static final int WARMUP_ROUNDS = 4;
+	// rounds in a row that must not allocate at all
+	private static final int MEASURED_ROUNDS = 5;
+	// the JVM itself allocates in the thread now and then while it compiles (it resolves the string
+	// constants of a class when a method of the class is first queued for the optimizing compiler),
+	// such a round starts the measured rounds again
+	private static final int MAX_ROUNDS = 40;
+
+	// simulated key presses: random pushes while held, all pushed once per press
+	private static final int KEY_PUSH_RAND = KeyInput.KEY_V;
+	private static final int KEY_PUSH_ALL = KeyInput.KEY_F;
+
+	private final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+
+	/**
+	 * Box nodes grouped into tiles
+	 */
+	@Test
+	public void boxes() {
+		assertNoAllocation(CoolArray.RenderMode.BOXES, false);
+	}
+
+	/**
+	 * Batched mesh
+	 */
+	@Test
+	public void batched() {
+		assertNoAllocation(CoolArray.RenderMode.BATCHED, false);
+	}
+
+	/**
+	 * Tiles switching between boxes and heightfields while the camera moves
+	 */
+	@Test
+	public void lod() {
+		assertNoAllocation(CoolArray.RenderMode.LOD, false);
+	}
+
+	/**
+	 * Physics in the worker thread, the render thread only moves the boxes of the snapshots
+	 */
+	@Test
+	public void lodWithWorker() {
+		assertNoAllocation(CoolArray.RenderMode.LOD, true);
+	}
+
+	/**
+	 * @param renderMode
+	 * @param worker
+	 *            true to simulate the grid in the worker thread
+	 */
+	private void assertNoAllocation(final CoolArray.RenderMode renderMode, final boolean worker) {
+		final Level level = new Level(renderMode);
+		level.array.updateGeometricState(0.0f, true);
+		level.array.execute(GridAction.SWITCH_WAVE);
+		level.array.execute(GridAction.SWITCH_RINGS);
+		if (worker) {
+			level.array.startWorker(level.clock, STEPS_PER_SECOND, null);
+		}
+		try {
+			// warm up with the same code that is measured, so it is not compiled again while measuring
+			for (int round = 0; round < WARMUP_ROUNDS; round++) {
+				runFrames(level);
+			}
+			int cleanRounds = 0;
+			long allocated = 0;
+			for (int round = 0; (round < MAX_ROUNDS) && (cleanRounds < MEASURED_ROUNDS); round++) {
+				final long roundAllocated = runFrames(level);
+				if (roundAllocated == 0) {
+					cleanRounds++;
+				} else {
+					cleanRounds = 0;
+					allocated = roundAllocated;
+				}
+			}
+			assertEquals(renderMode + (worker ? " with worker" : "")
+					+ ": rounds in a row without allocation, " + allocated + " bytes allocated before",
+					MEASURED_ROUNDS, cleanRounds);
+		} finally {
+			level.array.stopWorker();
+		}
+	}
+
+	/**
+	 * Run a round of frames
+	 * 
+	 * @param level
+	 * @return bytes allocated by the frames
+	 */
+	private long runFrames(final Level level) {
+		// the first calls of the counter may allocate themselves
+		getAllocatedBytes();
+		final long before = getAllocatedBytes();
+		for (int frame = 0; frame < ROUND_FRAMES; frame++) {
+			level.frame(frame);
+		}
+		return getAllocatedBytes() - before;
+	}
+
+	/**
+	 * The parts of <code>DemoLevel</code> the update uses, without a renderer
+	 */
+	private static class Level {
+
+		private final FixedTimestep timestep = new FixedTimestep(STEPS_PER_SECOND, 0.25f);
+		private final FixedClock clock = new FixedClock(timestep.getStepTime());
+		private final CoolArray array;
+		private final InputDispatcher input = new InputDispatcher();
+		private final CommandServer commandServer = new CommandServer(new InetSocketAddress(0));
+		private final DemoMetrics metrics = new DemoMetrics(new FrameTimings());
+		private final FrameTimings frameTimings = metrics.getFrameTimings();
+		// location of the camera, changed in place
+		private final Vector3f camera = new Vector3f();
+
+		/**
+		 * @param renderMode
+		 */
+		public Level(final CoolArray.RenderMode renderMode) {
+			array = new CoolArray("test", 32, 32, clock, renderMode);
+			bind(KEY_PUSH_RAND, GridAction.PUSH_RAND, true);
+			bind(KEY_PUSH_ALL, GridAction.PUSH_ALL, false);
+		}
+
+		/**
+		 * @param keyCode
+		 * @param action
+		 * @param repeat
+		 */
+		private void bind(final int keyCode, final GridAction action, final boolean repeat) {
+			input.register(keyCode, new KeyHandler() {
+
+				public void keyPressed(final int key) {
+					array.execute(action);
+				}
+			}, repeat);
+		}
+
+		/**
+		 * One frame as run by the level
+		 * 
+		 * @param frame
+		 *            number of the frame in the round
+		 */
+		public void frame(final int frame) {
+			// keys are pressed and released as the input system of the render thread reports them
+			if (frame % 100 == 0) {
+				input.onKey('v', KEY_PUSH_RAND, true);
+			} else if (frame % 100 == 3) {
+				input.onKey('v', KEY_PUSH_RAND, false);
+			}
+			if (frame % 700 == 0) {
+				input.onKey('f', KEY_PUSH_ALL, true);
+			} else if (frame % 700 == 1) {
+				input.onKey('f', KEY_PUSH_ALL, false);
+			}
+			// the camera moves away from the array and back, tiles switch their detail
+			final float away = Math.abs(frame - ROUND_FRAMES / 2) / (ROUND_FRAMES / 2.0f);
+			final float distance = 100.0f + 300.0f * away;
+			camera.set(distance, 50.0f, distance);
+
+			// DemoLevel.update
+			input.dispatch();
+			GridCommand command;
+			while ((command = commandServer.poll()) != null) {
+				array.execute(command);
+			}
+			array.updateLod(camera);
+			if (array.isWorkerRunning()) {
+				array.updateFromWorker();
+			} else {
+				final long physicsStart = System.nanoTime();
+				final int steps = timestep.advance(FRAME_TIME);
+				for (int i = 0; i < steps; i++) {
+					clock.tick();
+					array.update();
+				}
+				frameTimings.record(FrameTimings.Section.PHYSICS, System.nanoTime() - physicsStart);
+				array.updateBoxes(timestep.getAlpha());
+				metrics.updateSimulation(array.getGrid());
+			}
+
+			// the scene graph update of the game
+			array.updateGeometricState(FRAME_TIME, true);
+		}
+
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far
+	 */
+	private long getAllocatedBytes() {
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return the thread bean of the JVM, if it can measure allocations
+	 */
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assertTrue("JVM can not measure allocated memory", bean instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		assertTrue("JVM can not measure allocated memory", threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		return threadBean;
+	}
+
+}
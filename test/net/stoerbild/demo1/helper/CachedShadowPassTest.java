@@ -0,0 +1,61 @@
+package net.stoerbild.demo1.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import net.stoerbild.demo1.coolarray.CoolArray;
+
+import org.junit.Test;
+
+/**
+ * Tests of the occluder collection of {@link CachedShadowPass}, without a display
+ * 
+ * @author mq
+ */
+public class CachedShadowPassTest {
+
+	private static final float STEP_TIME = 1.0f / 120.0f;
+
+	/**
+	 * Occluders are only collected when the array reports a change, and then the same as without
+	 * the array reporting changes
+	 */
+	@Test
+	public void collectOnlyChanges() {
+		final FixedClock clock = new FixedClock(STEP_TIME);
+		final CoolArray array = new CoolArray("test", 20, 20, clock, CoolArray.RenderMode.BOXES);
+		final CachedShadowPass pass = new CachedShadowPass();
+		pass.addOccluder(array);
+		pass.setOccluderSource(array);
+		final CachedShadowPass everyFrame = new CachedShadowPass();
+		everyFrame.addOccluder(array);
+
+		// resting boxes far from the lights cast no shadows
+		pass.setupOccluderMeshes();
+		pass.setupOccluderMeshes();
+		assertEquals(1L, pass.getCollectCount());
+		assertEquals(0, pass.getOccluderMeshCount());
+
+		// all boxes start moving
+		array.pushAll();
+		clock.tick();
+		array.update();
+		array.updateBoxes(1.0f);
+		pass.setupOccluderMeshes();
+		pass.setupOccluderMeshes();
+		everyFrame.setupOccluderMeshes();
+		everyFrame.setupOccluderMeshes();
+		assertEquals(2L, pass.getCollectCount());
+		assertEquals(2L, everyFrame.getCollectCount());
+		assertTrue(pass.getOccluderMeshCount() >= 400);
+		assertEquals(everyFrame.getOccluderMeshCount(), pass.getOccluderMeshCount());
+
+		// a new source or occluder is always collected
+		pass.setOccluderSource(array);
+		pass.setupOccluderMeshes();
+		assertEquals(3L, pass.getCollectCount());
+		pass.addOccluder(new CoolArray("other", 4, 4, clock, CoolArray.RenderMode.BOXES));
+		pass.setupOccluderMeshes();
+		assertEquals(4L, pass.getCollectCount());
+	}
+
+}
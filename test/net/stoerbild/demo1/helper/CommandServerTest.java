@@ -0,0 +1,267 @@
+package net.stoerbild.demo1.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import net.stoerbild.demo1.coolarray.GridAction;
+import net.stoerbild.demo1.coolarray.GridCommand;
+import net.stoerbild.demo1.coolarray.PushCommand;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of {@link CommandServer} over the loopback interface, the server listens on a free port
+ * 
+ * @author mq
+ */
+public class CommandServerTest {
+
+	// longer than the longest command of the server
+	private static final int TOO_LONG = 300;
+	// time the server has to handle the sent commands
+	private static final long TIMEOUT_MILLIS = 5000;
+	// time between two parts of a TCP line, so the server reads them separately
+	private static final long PAUSE_MILLIS = 100;
+
+	private CommandServer server;
+
+	/**
+	 * Stop the server of the test
+	 */
+	@After
+	public void tearDown() {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	/**
+	 * The server listens on the loopback interface unless configured otherwise
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void loopbackByDefault() throws IOException {
+		final String property = System.getProperty(CommandServer.BIND_ADDRESS_PROPERTY);
+		System.clearProperty(CommandServer.BIND_ADDRESS_PROPERTY);
+		try {
+			assertTrue(CommandServer.getBindAddress().isLoopbackAddress());
+			System.setProperty(CommandServer.BIND_ADDRESS_PROPERTY, "0.0.0.0");
+			assertTrue(CommandServer.getBindAddress().isAnyLocalAddress());
+		} finally {
+			if (property != null) {
+				System.setProperty(CommandServer.BIND_ADDRESS_PROPERTY, property);
+			} else {
+				System.clearProperty(CommandServer.BIND_ADDRESS_PROPERTY);
+			}
+		}
+	}
+
+	/**
+	 * A datagram may contain several commands with any separator
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void udpCommands() throws IOException {
+		start(1000);
+		sendDatagram("pushall;wave\nfloor\r\n PUSH 3 7 ");
+		awaitCounts(4, 0, 0);
+		assertSame(GridAction.PUSH_ALL, server.poll());
+		assertSame(GridAction.SWITCH_WAVE, server.poll());
+		assertSame(GridAction.SWITCH_FLOOR, server.poll());
+		assertPush(3, 7, server.poll());
+		assertNull(server.poll());
+	}
+
+	/**
+	 * Commands may be split across the reads of a TCP connection
+	 * 
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void tcpSplitLine() throws IOException, InterruptedException {
+		start(1000);
+		final Socket socket = connect();
+		try {
+			final OutputStream out = socket.getOutputStream();
+			send(out, "push");
+			Thread.sleep(PAUSE_MILLIS);
+			assertNull(server.poll());
+			send(out, "all\nwa");
+			Thread.sleep(PAUSE_MILLIS);
+			send(out, "ve\npush 1");
+			Thread.sleep(PAUSE_MILLIS);
+			send(out, "2 5;");
+			awaitCounts(3, 0, 0);
+		} finally {
+			socket.close();
+		}
+		assertSame(GridAction.PUSH_ALL, server.poll());
+		assertSame(GridAction.SWITCH_WAVE, server.poll());
+		assertPush(12, 5, server.poll());
+		assertNull(server.poll());
+	}
+
+	/**
+	 * A command longer than allowed is rejected once, the commands after it are handled
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void tooLongCommand() throws IOException {
+		start(1000);
+		final StringBuilder line = new StringBuilder();
+		for (int i = 0; i < TOO_LONG; i++) {
+			line.append('x');
+		}
+		final Socket socket = connect();
+		try {
+			send(socket.getOutputStream(), line + "\nstopall\n");
+			awaitCounts(1, 1, 0);
+		} finally {
+			socket.close();
+		}
+		sendDatagram(line + ";hold");
+		awaitCounts(2, 2, 0);
+		assertSame(GridAction.STOP_ALL, server.poll());
+		assertSame(GridAction.SWITCH_HOLD, server.poll());
+		assertNull(server.poll());
+	}
+
+	/**
+	 * Unknown commands and invalid arguments are rejected, empty commands are ignored
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void unknownCommand() throws IOException {
+		start(1000);
+		sendDatagram("jump;push a b;push 1;;\n\nsnake");
+		awaitCounts(1, 3, 0);
+		assertSame(GridAction.SWITCH_SNAKE, server.poll());
+		assertNull(server.poll());
+	}
+
+	/**
+	 * Commands not taken by the level are dropped when the queue is full, taking them makes room
+	 * again
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void queueFull() throws IOException {
+		start(2);
+		final Socket socket = connect();
+		try {
+			send(socket.getOutputStream(), "pushall\nwave\nfloor\nrings\n");
+			awaitCounts(4, 0, 2);
+			assertSame(GridAction.PUSH_ALL, server.poll());
+			assertSame(GridAction.SWITCH_WAVE, server.poll());
+			assertNull(server.poll());
+			send(socket.getOutputStream(), "hold\n");
+			awaitCounts(5, 0, 2);
+		} finally {
+			socket.close();
+		}
+		assertSame(GridAction.SWITCH_HOLD, server.poll());
+		assertNull(server.poll());
+	}
+
+	/**
+	 * Start a server on a free port of the loopback interface
+	 * 
+	 * @param maxQueued
+	 *            commands not taken, more are dropped
+	 * @throws IOException
+	 */
+	private void start(final int maxQueued) throws IOException {
+		server = new CommandServer(new InetSocketAddress(InetAddress.getByName(null), 0), maxQueued);
+		server.start();
+		assertTrue(server.isRunning());
+		assertTrue(server.getPort() > 0);
+	}
+
+	/**
+	 * @return a TCP connection to the server
+	 * @throws IOException
+	 */
+	private Socket connect() throws IOException {
+		final Socket socket = new Socket(InetAddress.getByName(null), server.getPort());
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+
+	/**
+	 * @param out
+	 *            of a TCP connection
+	 * @param text
+	 * @throws IOException
+	 */
+	private static void send(final OutputStream out, final String text) throws IOException {
+		out.write(text.getBytes("US-ASCII"));
+		out.flush();
+	}
+
+	/**
+	 * @param text
+	 *            payload of a single datagram
+	 * @throws IOException
+	 */
+	private void sendDatagram(final String text) throws IOException {
+		final byte[] bytes = text.getBytes("US-ASCII");
+		final DatagramSocket socket = new DatagramSocket();
+		try {
+			socket.send(new DatagramPacket(bytes, bytes.length, InetAddress.getByName(null), server
+					.getPort()));
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Wait until the server handled the sent commands
+	 * 
+	 * @param received
+	 *            valid commands
+	 * @param rejected
+	 *            unknown or invalid commands
+	 * @param dropped
+	 *            commands dropped because the queue is full
+	 */
+	private void awaitCounts(final int received, final int rejected, final int dropped) {
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while ((server.getReceivedCount() + server.getRejectedCount() < received + rejected)
+				&& (System.currentTimeMillis() < deadline)) {
+			Thread.yield();
+		}
+		assertEquals("received", received, server.getReceivedCount());
+		assertEquals("rejected", rejected, server.getRejectedCount());
+		assertEquals("dropped", dropped, server.getDroppedCount());
+	}
+
+	/**
+	 * @param x
+	 * @param z
+	 * @param command
+	 *            expected to push the box at x, z
+	 */
+	private static void assertPush(final int x, final int z, final GridCommand command) {
+		assertTrue(command instanceof PushCommand);
+		assertEquals(x, ((PushCommand) command).getX());
+		assertEquals(z, ((PushCommand) command).getZ());
+	}
+
+}
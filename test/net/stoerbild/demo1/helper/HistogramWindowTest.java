@@ -0,0 +1,110 @@
+package net.stoerbild.demo1.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link HistogramWindow}: recent values next to the values since the start
+ * 
+ * @author mq
+ */
+public class HistogramWindowTest {
+
+	private static final long MILLIS = 1000L * 1000;
+	private static final long WINDOW = 10000 * MILLIS;
+	// precision of a histogram bucket
+	private static final float DELTA = 0.05f;
+
+	/**
+	 * Until a window has passed, the recent values are all values
+	 */
+	@Test
+	public void firstWindow() {
+		final FrameHistogram histogram = new FrameHistogram();
+		final HistogramWindow window = new HistogramWindow(histogram, WINDOW);
+		record(histogram, 100, 10);
+		final FrameHistogram recent = window.getRecent(System.nanoTime());
+		assertEquals(100L, recent.getCount());
+		assertEquals(10.0f, recent.getPercentile(50), DELTA * 10);
+		assertEquals(10.0f, recent.getMean(), DELTA * 10);
+	}
+
+	/**
+	 * Slow frames of the past leave the recent values, but not the values since the start
+	 */
+	@Test
+	public void oldValuesLeave() {
+		final FrameHistogram histogram = new FrameHistogram();
+		final HistogramWindow window = new HistogramWindow(histogram, WINDOW);
+		final long start = System.nanoTime();
+
+		// a slow start
+		record(histogram, 1000, 40);
+		assertEquals(40.0f, window.getRecent(start + WINDOW).getPercentile(99), DELTA * 40);
+
+		// fast frames in the next window
+		record(histogram, 1000, 10);
+		FrameHistogram recent = window.getRecent(start + 2 * WINDOW);
+		assertEquals(1000L, recent.getCount());
+		assertEquals(10.0f, recent.getPercentile(99), DELTA * 10);
+		assertEquals(10.0f, recent.getMax(), DELTA * 10);
+		// only the change from the slow to the fast frames
+		assertEquals(0.03f, recent.getJitter(), 0.01f);
+
+		// read again within the window: still the same values
+		recent = window.getRecent(start + 2 * WINDOW + WINDOW / 2);
+		assertEquals(1000L, recent.getCount());
+
+		assertEquals(2000L, histogram.getCount());
+		assertEquals(40.0f, histogram.getPercentile(99), DELTA * 40);
+		assertEquals(40.0f, histogram.getMax(), DELTA * 40);
+	}
+
+	/**
+	 * Without new values the recent values become empty
+	 */
+	@Test
+	public void noNewValues() {
+		final FrameHistogram histogram = new FrameHistogram();
+		final HistogramWindow window = new HistogramWindow(histogram, WINDOW);
+		final long start = System.nanoTime();
+		record(histogram, 10, 20);
+		window.getRecent(start + WINDOW);
+		final FrameHistogram recent = window.getRecent(start + 2 * WINDOW);
+		assertEquals(0L, recent.getCount());
+		assertEquals(0.0f, recent.getPercentile(99), 0.0f);
+		assertEquals(0.0f, recent.getMax(), 0.0f);
+	}
+
+	/**
+	 * After a reset of the histogram and the window only new values count
+	 */
+	@Test
+	public void reset() {
+		final FrameHistogram histogram = new FrameHistogram();
+		final HistogramWindow window = new HistogramWindow(histogram, WINDOW);
+		record(histogram, 10, 20);
+		window.getRecent(System.nanoTime() + WINDOW);
+		histogram.reset();
+		window.reset();
+		record(histogram, 5, 30);
+		final FrameHistogram recent = window.getRecent(System.nanoTime());
+		assertEquals(5L, recent.getCount());
+		assertEquals(30.0f, recent.getPercentile(50), DELTA * 30);
+	}
+
+	/**
+	 * @param histogram
+	 * @param count
+	 *            number of values
+	 * @param millis
+	 *            value
+	 */
+	private static void record(final FrameHistogram histogram, final int count, final long millis) {
+		for (int i = 0; i < count; i++) {
+			histogram.record(millis * MILLIS);
+		}
+	}
+
+}
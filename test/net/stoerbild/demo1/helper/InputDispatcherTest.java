@@ -0,0 +1,220 @@
+package net.stoerbild.demo1.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jme.input.KeyInput;
+
+/**
+ * Tests of {@link InputDispatcher} with synthetic key events, no display needed
+ * 
+ * @author mq
+ */
+public class InputDispatcherTest {
+
+	// more events than fit into the queue of a frame
+	private static final int OVERFLOW_KEYS = 100;
+
+	/**
+	 * Counts the calls of a handler
+	 */
+	private static class Counter implements KeyHandler {
+		int count = 0;
+		int lastKey = -1;
+
+		public void keyPressed(final int keyCode) {
+			count++;
+			lastKey = keyCode;
+		}
+	}
+
+	private InputDispatcher input;
+	private Counter single;
+	private Counter repeat;
+
+	/**
+	 * F runs its action once per press, V every frame while held
+	 */
+	@Before
+	public void setUp() {
+		input = new InputDispatcher();
+		single = new Counter();
+		repeat = new Counter();
+		input.register(KeyInput.KEY_F, single, false);
+		input.register(KeyInput.KEY_V, repeat, true);
+	}
+
+	/**
+	 * A press is dispatched with the next frame, not before
+	 */
+	@Test
+	public void press() {
+		press(KeyInput.KEY_F);
+		assertEquals(0, single.count);
+		input.dispatch();
+		assertEquals(1, single.count);
+		assertEquals(KeyInput.KEY_F, single.lastKey);
+		assertEquals(0, repeat.count);
+	}
+
+	/**
+	 * Holding a key without repeat runs the action once, autorepeat of the keyboard is ignored
+	 */
+	@Test
+	public void holdWithoutRepeat() {
+		press(KeyInput.KEY_F);
+		for (int frame = 0; frame < 5; frame++) {
+			input.dispatch();
+			// autorepeat of the keyboard
+			press(KeyInput.KEY_F);
+		}
+		assertEquals(1, single.count);
+	}
+
+	/**
+	 * Holding a repeating key runs the action every frame, once per frame even with autorepeat of the
+	 * keyboard
+	 */
+	@Test
+	public void holdWithRepeat() {
+		press(KeyInput.KEY_V);
+		input.dispatch();
+		assertEquals(1, repeat.count);
+		input.dispatch();
+		input.dispatch();
+		assertEquals(3, repeat.count);
+		press(KeyInput.KEY_V);
+		press(KeyInput.KEY_V);
+		input.dispatch();
+		assertEquals(4, repeat.count);
+	}
+
+	/**
+	 * A released key stops repeating and can be pressed again
+	 */
+	@Test
+	public void release() {
+		press(KeyInput.KEY_V);
+		press(KeyInput.KEY_F);
+		input.dispatch();
+		input.dispatch();
+		release(KeyInput.KEY_V);
+		release(KeyInput.KEY_F);
+		input.dispatch();
+		input.dispatch();
+		assertEquals(2, repeat.count);
+		assertEquals(1, single.count);
+
+		press(KeyInput.KEY_F);
+		input.dispatch();
+		assertEquals(2, single.count);
+	}
+
+	/**
+	 * A key pressed and released within one frame runs its action once and does not repeat
+	 */
+	@Test
+	public void pressAndReleaseInOneFrame() {
+		press(KeyInput.KEY_F);
+		release(KeyInput.KEY_F);
+		press(KeyInput.KEY_V);
+		release(KeyInput.KEY_V);
+		input.dispatch();
+		input.dispatch();
+		input.dispatch();
+		assertEquals(1, single.count);
+		assertEquals(1, repeat.count);
+	}
+
+	/**
+	 * Presses that do not fit into the queue of a frame are dropped, the queue works again in the next
+	 * frame
+	 */
+	@Test
+	public void queueOverflow() {
+		final Counter any = new Counter();
+		for (int keyCode = 0; keyCode < OVERFLOW_KEYS; keyCode++) {
+			input.register(keyCode, any, false);
+		}
+		for (int keyCode = 0; keyCode < OVERFLOW_KEYS; keyCode++) {
+			press(keyCode);
+		}
+		input.dispatch();
+		assertEquals(64, any.count);
+		assertEquals(63, any.lastKey);
+
+		// a dropped key was never pressed, so it can be pressed now
+		press(OVERFLOW_KEYS - 1);
+		input.dispatch();
+		assertEquals(65, any.count);
+		assertEquals(OVERFLOW_KEYS - 1, any.lastKey);
+	}
+
+	/**
+	 * A release is not lost when the queue is full, a repeating key would be held forever otherwise
+	 */
+	@Test
+	public void releaseOnFullQueue() {
+		press(KeyInput.KEY_V);
+		input.dispatch();
+		for (int i = 0; i < OVERFLOW_KEYS; i++) {
+			// unbound keys fill the queue
+			press(200);
+		}
+		release(KeyInput.KEY_V);
+		input.dispatch();
+		input.dispatch();
+		assertEquals(1, repeat.count);
+
+		press(KeyInput.KEY_V);
+		input.dispatch();
+		assertEquals(2, repeat.count);
+	}
+
+	/**
+	 * Unknown key codes are ignored, unregistered keys run nothing
+	 */
+	@Test
+	public void unknownAndUnregisteredKeys() {
+		press(-1);
+		press(256);
+		press(KeyInput.KEY_A);
+		input.unregister(KeyInput.KEY_V);
+		press(KeyInput.KEY_V);
+		input.dispatch();
+		input.dispatch();
+		assertEquals(0, single.count);
+		assertEquals(0, repeat.count);
+	}
+
+	/**
+	 * Cleared events are not dispatched, held keys stop repeating
+	 */
+	@Test
+	public void clear() {
+		press(KeyInput.KEY_V);
+		input.dispatch();
+		press(KeyInput.KEY_F);
+		input.clear();
+		input.dispatch();
+		assertEquals(0, single.count);
+		assertEquals(1, repeat.count);
+	}
+
+	/**
+	 * @param keyCode
+	 */
+	private void press(final int keyCode) {
+		input.onKey('\0', keyCode, true);
+	}
+
+	/**
+	 * @param keyCode
+	 */
+	private void release(final int keyCode) {
+		input.onKey('\0', keyCode, false);
+	}
+
+}